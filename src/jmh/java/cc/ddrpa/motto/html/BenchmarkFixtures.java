@@ -0,0 +1,99 @@
+package cc.ddrpa.motto.html;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基准测试共用的模版、数据与字体
+ */
+final class BenchmarkFixtures {
+
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkFixtures.class);
+
+    static final String RECORD_TEMPLATE = "record-template.html";
+
+    /**
+     * 仓库中附带的 Noto 字体，需要按照 font-seems-okay 中的说明自行下载
+     */
+    static final List<String> NOTO_FONTS = List.of(
+        "font-seems-okay/Noto_Sans_SC/static/NotoSansSC-Regular.ttf",
+        "font-seems-okay/Noto_Serif_SC/static/NotoSerifSC-Regular.ttf");
+
+    private static boolean fontsLoaded = false;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 注册存在的 Noto 字体，缺少字体时模版中的中文会退回到默认字体，结果偏快
+     */
+    static synchronized void loadFonts() {
+        if (fontsLoaded) {
+            return;
+        }
+        List<String> existing = NOTO_FONTS.stream()
+            .filter(path -> Files.isRegularFile(Path.of(path)))
+            .toList();
+        if (existing.size() < NOTO_FONTS.size()) {
+            logger.warn("Noto fonts not found under font-seems-okay, using fallback fonts");
+        }
+        DocumentBuilder.addFonts(existing);
+        fontsLoaded = true;
+    }
+
+    static String readResource(String name) {
+        try (InputStream is = BenchmarkFixtures.class.getClassLoader()
+            .getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IllegalStateException("Missing fixture " + name);
+            }
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static byte[] readResourceBytes(String name) {
+        try (InputStream is = BenchmarkFixtures.class.getClassLoader()
+            .getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IllegalStateException("Missing fixture " + name);
+            }
+            return is.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 与 record-template.html 匹配的数据，内容固定以便多次运行的结果可以比较
+     *
+     * @param rows 课程记录的行数
+     */
+    static Map<String, Object> recordData(int rows) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("name", "张三");
+        data.put("idCard", "330102199001011234");
+        data.put("category", "吃瓜群众");
+        data.put("position", "安全员");
+        data.put("education", "有文化的人");
+        data.put("major", "安全工程");
+        data.put("company", "示例科技有限公司");
+        data.put("companyCode", "321123234679826ft34267XX");
+        data.put("avatar", "resources://avatar.jpeg");
+        data.put("all_course_records", IntStream.rangeClosed(1, rows)
+            .mapToObj(i -> new CourseRecord(i, "课程名称" + i, "培训策略" + (i % 3), i % 40, 60 + i % 40))
+            .toList());
+        return data;
+    }
+}
@@ -0,0 +1,55 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.embedded.EmbeddedImage;
+import cc.ddrpa.motto.html.embedded.EncodingProfile;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link EmbeddedImage} 的解码、缩放与编码
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmbeddedImageBenchmark {
+
+    @Param({"avatar.jpeg", "rhodes.png"})
+    public String image;
+
+    @Param({"DEFAULT", "FAST", "SMALL"})
+    public String profile;
+
+    private byte[] bytes;
+    private EncodingProfile encodingProfile;
+
+    @Setup
+    public void setup() {
+        bytes = BenchmarkFixtures.readResourceBytes(image);
+        encodingProfile = switch (profile) {
+            case "FAST" -> EncodingProfile.FAST;
+            case "SMALL" -> EncodingProfile.SMALL;
+            default -> EncodingProfile.DEFAULT;
+        };
+    }
+
+    @Benchmark
+    public String scaleAndEncode() throws Exception {
+        return EmbeddedImage.newInstance(bytes)
+            .setEncodingProfile(encodingProfile)
+            .scaleWithPoint(64, 64)
+            .toDataURL();
+    }
+}
@@ -0,0 +1,59 @@
+package cc.ddrpa.motto.html;
+
+import com.lowagie.text.pdf.BaseFont;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 解析字体文件
+ * <p>
+ * 默认使用 font-seems-okay 中的 Noto 字体，可以通过 {@code -p fontPath=...} 指定其他字体
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FontLoadBenchmark {
+
+    @Param({"font-seems-okay/Noto_Sans_SC/static/NotoSansSC-Regular.ttf"})
+    public String fontPath;
+
+    @Setup
+    public void setup() {
+        if (!Files.isRegularFile(Path.of(fontPath))) {
+            throw new IllegalStateException("Font file not found: " + fontPath);
+        }
+    }
+
+    /**
+     * 完整解析字体，不经过 OpenPDF 的字体缓存，相当于第一次调用 {@link DocumentBuilder#addFont(String)}
+     */
+    @Benchmark
+    public BaseFont parse() throws Exception {
+        return BaseFont.createFont(fontPath, BaseFont.IDENTITY_H, BaseFont.EMBEDDED, false, null,
+            null);
+    }
+
+    /**
+     * 只读取名称表，相当于延迟加载时的注册
+     */
+    @Benchmark
+    public List<FontRegistry.FontFile> scan() throws Exception {
+        return FontRegistry.scan(fontPath);
+    }
+}
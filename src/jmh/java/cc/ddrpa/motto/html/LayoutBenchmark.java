@@ -0,0 +1,74 @@
+package cc.ddrpa.motto.html;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import org.apache.velocity.VelocityContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xml.sax.InputSource;
+
+/**
+ * XHTML 解析与排版
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayoutBenchmark {
+
+    @Param({"10", "200"})
+    public int rows;
+
+    private String html;
+    private RenderSlot slot;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.loadFonts();
+        StringWriter writer = new StringWriter();
+        TemplateSource.classpath().getTemplate(BenchmarkFixtures.RECORD_TEMPLATE)
+            .merge(new VelocityContext(BenchmarkFixtures.recordData(rows)), writer);
+        html = writer.toString();
+        slot = new RenderSlot(ITextRenderer.DEFAULT_DOTS_PER_POINT,
+            ITextRenderer.DEFAULT_DOTS_PER_PIXEL,
+            device -> new ResourcesUserAgent(device, ITextRenderer.DEFAULT_DOTS_PER_PIXEL));
+    }
+
+    @Benchmark
+    public Document parse() {
+        return XMLResource.load(new InputSource(new StringReader(html))).getDocument();
+    }
+
+    @Benchmark
+    public ITextRenderer parseAndLayout() {
+        ITextRenderer renderer = newRenderer(slot);
+        renderer.setDocument(parse(), null);
+        renderer.layout();
+        return renderer;
+    }
+
+    /**
+     * 与渲染流程相同，使用跨渲染共享的样式表缓存
+     */
+    static ITextRenderer newRenderer(RenderSlot slot) {
+        ITextRenderer renderer = slot.newRenderer();
+        renderer.getSharedContext().setCss(
+            new CachingStyleReference(renderer.getSharedContext().getUserAgentCallback()));
+        return renderer;
+    }
+}
@@ -0,0 +1,69 @@
+package cc.ddrpa.motto.html;
+
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import org.apache.velocity.VelocityContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xml.sax.InputSource;
+
+/**
+ * 在已经排版的文档上写出 PDF
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfBenchmark {
+
+    @Param({"10", "200"})
+    public int rows;
+
+    private String html;
+    private RenderSlot slot;
+    private ITextRenderer renderer;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.loadFonts();
+        StringWriter writer = new StringWriter();
+        TemplateSource.classpath().getTemplate(BenchmarkFixtures.RECORD_TEMPLATE)
+            .merge(new VelocityContext(BenchmarkFixtures.recordData(rows)), writer);
+        html = writer.toString();
+        slot = new RenderSlot(ITextRenderer.DEFAULT_DOTS_PER_POINT,
+            ITextRenderer.DEFAULT_DOTS_PER_PIXEL,
+            device -> new ResourcesUserAgent(device, ITextRenderer.DEFAULT_DOTS_PER_PIXEL));
+    }
+
+    /**
+     * 写出 PDF 会修改盒模型中的绘制状态，每次调用前重新排版，排版的耗时不计入结果
+     */
+    @Setup(Level.Invocation)
+    public void layout() {
+        renderer = LayoutBenchmark.newRenderer(slot);
+        renderer.setDocument(
+            XMLResource.load(new InputSource(new StringReader(html))).getDocument(), null);
+        renderer.layout();
+    }
+
+    @Benchmark
+    public void createPdf() {
+        renderer.createPDF(OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,52 @@
+package cc.ddrpa.motto.html;
+
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 从数据到 PDF 的完整渲染流程
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"10", "200"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean streamingMerge;
+
+    private DocumentRenderer renderer;
+    private Map<String, Object> data;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkFixtures.loadFonts();
+        renderer = new DocumentBuilder()
+            .loadTemplate(BenchmarkFixtures.RECORD_TEMPLATE)
+            .setStreamingMerge(streamingMerge)
+            .buildRenderer();
+        data = BenchmarkFixtures.recordData(rows);
+    }
+
+    @Benchmark
+    public void render() {
+        renderer.render(data, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,63 @@
+package cc.ddrpa.motto.html;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 模版解析与 Velocity 合并
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateBenchmark {
+
+    @Param({"10", "200"})
+    public int rows;
+
+    private String templateContent;
+    private Template template;
+    private VelocityContext context;
+
+    @Setup
+    public void setup() {
+        templateContent = BenchmarkFixtures.readResource(BenchmarkFixtures.RECORD_TEMPLATE);
+        template = TemplateSource.classpath().getTemplate(BenchmarkFixtures.RECORD_TEMPLATE);
+        context = new VelocityContext(BenchmarkFixtures.recordData(rows));
+        // 关闭模版缓存，否则测到的只是一次哈希
+        DocumentBuilder.setTemplateCacheSize(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        DocumentBuilder.setTemplateCacheSize(DocumentBuilder.DEFAULT_TEMPLATE_CACHE_SIZE);
+    }
+
+    @Benchmark
+    public DocumentBuilder parseTemplate() throws Exception {
+        return new DocumentBuilder().loadTemplateFromPlainText(templateContent);
+    }
+
+    @Benchmark
+    public String merge() {
+        StringWriter writer = new StringWriter();
+        template.merge(context, writer);
+        return writer.toString();
+    }
+}
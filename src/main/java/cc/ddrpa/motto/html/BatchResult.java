@@ -0,0 +1,40 @@
+package cc.ddrpa.motto.html;
+
+import java.util.List;
+
+/**
+ * 批量渲染的结果，单个文档的失败不会中断整个批次
+ *
+ * @param total    已提交渲染的文档数量
+ * @param failures 渲染失败的文档，按序号排列
+ */
+public record BatchResult(int total, List<Failure> failures) {
+
+    /**
+     * 渲染成功的文档数量
+     *
+     * @return succeeded count
+     */
+    public int succeeded() {
+        return total - failures.size();
+    }
+
+    /**
+     * 是否所有文档都渲染成功
+     *
+     * @return true if no failure
+     */
+    public boolean isAllSucceeded() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * 渲染失败的文档
+     *
+     * @param index 文档在输入中的序号，从 0 开始
+     * @param cause 失败的原因
+     */
+    public record Failure(int index, Throwable cause) {
+
+    }
+}
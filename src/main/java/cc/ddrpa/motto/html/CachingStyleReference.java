@@ -0,0 +1,247 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.cache.CacheStats;
+import cc.ddrpa.motto.html.cache.LruCache;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.context.StyleReference;
+import org.xhtmlrenderer.css.extend.StylesheetFactory;
+import org.xhtmlrenderer.css.parser.CSSParser;
+import org.xhtmlrenderer.css.sheet.Stylesheet;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo;
+import org.xhtmlrenderer.extend.NamespaceHandler;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.resource.CSSResource;
+import org.xhtmlrenderer.util.XRLog;
+
+/**
+ * 在多次渲染间共享解析后样式表的 {@link StyleReference}
+ * <p>
+ * Flying Saucer 的样式表缓存属于单个 {@link org.xhtmlrenderer.pdf.ITextRenderer}，每次渲染都会重新读取和解析
+ * {@code <link rel="stylesheet">} 与 {@code <style>}。这里在获取文档的样式表列表时，把共享缓存中解析好的
+ * {@link Stylesheet} 直接挂到对应的 {@link StylesheetInfo} 上，外部样式表以 URI 为键，内联样式表以内容的摘要为键。
+ * 样式表在解析后只会被读取，可以在多个线程间共享。
+ */
+class CachingStyleReference extends StyleReference {
+
+    static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static volatile LruCache<String, Stylesheet> cache = new LruCache<>(DEFAULT_CACHE_SIZE);
+
+    private final UserAgentCallback userAgent;
+
+    CachingStyleReference(UserAgentCallback userAgent) {
+        super(userAgent);
+        this.userAgent = userAgent;
+    }
+
+    static void setCacheSize(int maxSize) {
+        cache = new LruCache<>(maxSize);
+    }
+
+    static CacheStats cacheStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void setDocumentContext(SharedContext context, NamespaceHandler nsh, Document doc,
+        UserInterface ui) {
+        super.setDocumentContext(context, new CachingNamespaceHandler(nsh), doc, ui);
+    }
+
+    private void attachCached(List<StylesheetInfo> infos) {
+        LruCache<String, Stylesheet> current = cache;
+        for (StylesheetInfo info : infos) {
+            if (info.getStylesheet() != null) {
+                continue;
+            }
+            if (info.isInline()) {
+                String content = info.getContent();
+                String uri = userAgent.getBaseURL() + "#inline_style";
+                String key = "inline:" + info.getOrigin() + ":" + userAgent.getBaseURL() + "#"
+                    + digest(content);
+                info.setStylesheet(current.computeIfAbsent(key,
+                    ignored -> parse(uri, info.getOrigin(), content)));
+                // 已经挂上解析结果，不再作为内联样式表交给 StyleReference 解析
+                info.setContent(null);
+                info.setUri(null);
+            } else if (info.getUri() != null) {
+                String uri = userAgent.resolveURI(info.getUri());
+                if (uri == null) {
+                    continue;
+                }
+                info.setUri(uri);
+                Stylesheet sheet = current.computeIfAbsent(
+                    "external:" + info.getOrigin() + ":" + uri,
+                    ignored -> load(uri, info.getOrigin(), new HashSet<>()));
+                // 读取失败时不缓存，交给 StyleReference 按原来的方式处理
+                info.setStylesheet(sheet);
+            }
+        }
+    }
+
+    /**
+     * 读取并解析外部样式表，{@code @import} 引入的样式表一并解析并挂到导入规则上
+     */
+    private Stylesheet load(String uri, int origin, Set<String> visited) {
+        if (!visited.add(uri)) {
+            return null;
+        }
+        CSSResource resource = userAgent.getCSSResource(uri);
+        InputStream is = resource == null || resource.getResourceInputSource() == null
+            ? null
+            : resource.getResourceInputSource().getByteStream();
+        if (is == null) {
+            return null;
+        }
+        Stylesheet sheet;
+        try (InputStreamReader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+            sheet = newParser().parseStylesheet(uri, origin, reader);
+        } catch (IOException e) {
+            XRLog.cssParse(Level.WARNING,
+                "Couldn't parse stylesheet at URI " + uri + ": " + e.getMessage(), e);
+            return null;
+        }
+        for (StylesheetInfo imported : sheet.getImportRules()) {
+            if (imported.getStylesheet() == null && imported.getUri() != null) {
+                imported.setStylesheet(load(imported.getUri(), imported.getOrigin(), visited));
+            }
+        }
+        return sheet;
+    }
+
+    private static Stylesheet parse(String uri, int origin, String content) {
+        try {
+            return newParser().parseStylesheet(uri, origin, new StringReader(content));
+        } catch (IOException e) {
+            XRLog.cssParse(Level.WARNING,
+                "Couldn't parse stylesheet at URI " + uri + ": " + e.getMessage(), e);
+            return new Stylesheet(uri, origin);
+        }
+    }
+
+    /**
+     * {@link CSSParser} 不是线程安全的，每次解析使用新的实例
+     */
+    private static CSSParser newParser() {
+        return new CSSParser(
+            (uri, message) -> XRLog.cssParse(Level.WARNING, "(" + uri + ") " + message));
+    }
+
+    private static String digest(String content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 在返回文档的样式表列表前挂上缓存的样式表，其余方法直接委托
+     */
+    private class CachingNamespaceHandler implements NamespaceHandler {
+
+        private final NamespaceHandler delegate;
+
+        CachingNamespaceHandler(NamespaceHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<StylesheetInfo> getStylesheets(Document doc) {
+            List<StylesheetInfo> infos = delegate.getStylesheets(doc);
+            attachCached(infos);
+            return infos;
+        }
+
+        @Override
+        public String getNamespace() {
+            return delegate.getNamespace();
+        }
+
+        @Override
+        public StylesheetInfo getDefaultStylesheet(StylesheetFactory factory) {
+            return delegate.getDefaultStylesheet(factory);
+        }
+
+        @Override
+        public String getDocumentTitle(Document doc) {
+            return delegate.getDocumentTitle(doc);
+        }
+
+        @Override
+        public String getAttributeValue(Element e, String attrName) {
+            return delegate.getAttributeValue(e, attrName);
+        }
+
+        @Override
+        public String getAttributeValue(Element e, String namespaceURI, String attrName) {
+            return delegate.getAttributeValue(e, namespaceURI, attrName);
+        }
+
+        @Override
+        public String getClass(Element e) {
+            return delegate.getClass(e);
+        }
+
+        @Override
+        public String getID(Element e) {
+            return delegate.getID(e);
+        }
+
+        @Override
+        public String getElementStyling(Element e) {
+            return delegate.getElementStyling(e);
+        }
+
+        @Override
+        public String getNonCssStyling(Element e) {
+            return delegate.getNonCssStyling(e);
+        }
+
+        @Override
+        public String getLang(Element e) {
+            return delegate.getLang(e);
+        }
+
+        @Override
+        public String getLinkUri(Element e) {
+            return delegate.getLinkUri(e);
+        }
+
+        @Override
+        public String getAnchorName(Element e) {
+            return delegate.getAnchorName(e);
+        }
+
+        @Override
+        public boolean isImageElement(Element e) {
+            return delegate.isImageElement(e);
+        }
+
+        @Override
+        public boolean isFormElement(Element e) {
+            return delegate.isFormElement(e);
+        }
+
+        @Override
+        public String getImageSourceURI(Element e) {
+            return delegate.getImageSourceURI(e);
+        }
+    }
+}
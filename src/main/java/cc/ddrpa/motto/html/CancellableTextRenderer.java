@@ -0,0 +1,50 @@
+package cc.ddrpa.motto.html;
+
+import org.xhtmlrenderer.extend.FontContext;
+import org.xhtmlrenderer.extend.OutputDevice;
+import org.xhtmlrenderer.pdf.ITextTextRenderer;
+import org.xhtmlrenderer.render.FSFont;
+import org.xhtmlrenderer.render.FSFontMetrics;
+import org.xhtmlrenderer.render.JustificationInfo;
+
+/**
+ * 在测量与绘制文本时检查 {@link RenderDeadline}
+ * <p>
+ * Flying Saucer 的排版没有可以中断的位置，而排版大表格或很长的文本时会频繁测量文本宽度，
+ * 因此每隔 {@value RenderDeadline#CHECK_INTERVAL} 次调用检查一次当前线程绑定的截止时间
+ */
+class CancellableTextRenderer extends ITextTextRenderer {
+
+    private int calls;
+
+    @Override
+    public int getWidth(FontContext context, FSFont font, String string) {
+        tick();
+        return super.getWidth(context, font, string);
+    }
+
+    @Override
+    public FSFontMetrics getFSFontMetrics(FontContext context, FSFont font, String string) {
+        tick();
+        return super.getFSFontMetrics(context, font, string);
+    }
+
+    @Override
+    public void drawString(OutputDevice outputDevice, String string, float x, float y) {
+        tick();
+        super.drawString(outputDevice, string, x, y);
+    }
+
+    @Override
+    public void drawString(OutputDevice outputDevice, String string, float x, float y,
+        JustificationInfo info) {
+        tick();
+        super.drawString(outputDevice, string, x, y, info);
+    }
+
+    private void tick() {
+        if (++calls % RenderDeadline.CHECK_INTERVAL == 0) {
+            RenderDeadline.checkCurrent();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package cc.ddrpa.motto.html;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 容量固定的字符管道，一个线程写入，另一个线程读取
+ * <p>
+ * {@link java.io.PipedReader} 逐字符加锁并依赖线程存活检测，不适合线程池中的生产者，因此自行实现。
+ */
+class CharPipe {
+
+    private final char[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int readPosition;
+    private int count;
+    private long written;
+    private boolean writerClosed;
+    private boolean readerClosed;
+    private Throwable failure;
+    private boolean failedBeforeReaderClosed;
+
+    CharPipe(int capacity) {
+        this.buffer = new char[capacity];
+    }
+
+    Writer writer() {
+        return new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                CharPipe.this.write(cbuf, off, len);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+                closeWriter(null);
+            }
+        };
+    }
+
+    Reader reader() {
+        return new Reader() {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return CharPipe.this.read(cbuf, off, len);
+            }
+
+            @Override
+            public void close() {
+                closeReader();
+            }
+        };
+    }
+
+    /**
+     * 以失败状态关闭写入端，读取端读完已写入的内容后会收到包含该原因的 {@link IOException}
+     *
+     * @param cause
+     */
+    void fail(Throwable cause) {
+        closeWriter(cause);
+    }
+
+    /**
+     * 写入端是否在读取端关闭之前就已失败，用于区分失败的源头
+     *
+     * @return true if the writer failed on its own
+     */
+    boolean isFailedBeforeReaderClosed() {
+        lock.lock();
+        try {
+            return failedBeforeReaderClosed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写入端累计写入的字符数
+     */
+    long written() {
+        lock.lock();
+        try {
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(char[] cbuf, int off, int len) throws IOException {
+        lock.lock();
+        try {
+            while (len > 0) {
+                while (count == buffer.length && !readerClosed) {
+                    notFull.await();
+                }
+                if (readerClosed) {
+                    throw new IOException("Pipe closed by reader");
+                }
+                if (writerClosed) {
+                    throw new IOException("Pipe closed");
+                }
+                int writePosition = (readPosition + count) % buffer.length;
+                int chunk = Math.min(len, Math.min(buffer.length - count,
+                    buffer.length - writePosition));
+                System.arraycopy(cbuf, off, buffer, writePosition, chunk);
+                count += chunk;
+                written += chunk;
+                off += chunk;
+                len -= chunk;
+                notEmpty.signal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing to pipe");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            while (count == 0 && !writerClosed && !readerClosed) {
+                notEmpty.await();
+            }
+            if (readerClosed) {
+                throw new IOException("Pipe closed");
+            }
+            if (count == 0) {
+                if (failure != null) {
+                    throw new IOException("Pipe writer failed", failure);
+                }
+                return -1;
+            }
+            int chunk = Math.min(len, Math.min(count, buffer.length - readPosition));
+            System.arraycopy(buffer, readPosition, cbuf, off, chunk);
+            readPosition = (readPosition + chunk) % buffer.length;
+            count -= chunk;
+            notFull.signal();
+            return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading from pipe");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeWriter(Throwable cause) {
+        lock.lock();
+        try {
+            if (!writerClosed) {
+                writerClosed = true;
+                failure = cause;
+                failedBeforeReaderClosed = cause != null && !readerClosed;
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void closeReader() {
+        lock.lock();
+        try {
+            readerClosed = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
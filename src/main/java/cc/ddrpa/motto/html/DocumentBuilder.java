@@ -1,58 +1,76 @@
 package cc.ddrpa.motto.html;
 
-import com.lowagie.text.pdf.BaseFont;
+import cc.ddrpa.motto.html.cache.CacheStats;
+import cc.ddrpa.motto.html.cache.LruCache;
+import cc.ddrpa.motto.html.metrics.MicrometerRenderListener;
+import cc.ddrpa.motto.html.metrics.RenderListener;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.stream.Stream;
 import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.exception.ResourceNotFoundException;
-import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.runtime.RuntimeServices;
-import org.apache.velocity.runtime.RuntimeSingleton;
 import org.apache.velocity.runtime.parser.ParseException;
-import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xhtmlrenderer.pdf.CJKFontResolver;
 import org.xhtmlrenderer.pdf.ITextOutputDevice;
 import org.xhtmlrenderer.pdf.ITextRenderer;
 import org.xhtmlrenderer.pdf.ITextUserAgent;
 
 public class DocumentBuilder {
 
-    private static final Logger logger = LoggerFactory.getLogger(DocumentBuilder.class);
+    public static final int DEFAULT_TEMPLATE_CACHE_SIZE = 256;
 
-    private static final CJKFontResolver fontResolver = new CJKFontResolver();
-    private static final VelocityEngine velocityEngine;
-    private static final RuntimeServices runtimeServices;
+    private static final Logger logger = LoggerFactory.getLogger(DocumentBuilder.class);
 
-    static {
-        velocityEngine = new VelocityEngine();
-        velocityEngine.setProperty(RuntimeConstants.RESOURCE_LOADERS, "classpath");
-        velocityEngine.setProperty("resource.loader.classpath.class",
-            ClasspathResourceLoader.class.getName());
-        velocityEngine.init();
-        runtimeServices = RuntimeSingleton.getRuntimeServices();
-    }
+    private static final FontRegistry fontRegistry = new FontRegistry();
+    private static volatile boolean lazyFontLoading = false;
+    private static volatile LruCache<String, Template> templateCache = new LruCache<>(
+        DEFAULT_TEMPLATE_CACHE_SIZE);
 
     private final float dotsPerPoint;
     private final int dotsPerPixel;
     private final ITextOutputDevice iTextOutputDevice;
     private final ITextUserAgent iTextUserAgent;
+    private final RenderSlot renderSlot;
     private VelocityContext velocityContext = new VelocityContext();
     private Template template;
+    private String templateId;
+    private TemplateSource templateSource = TemplateSource.classpath();
+    private Function<ITextOutputDevice, ITextUserAgent> userAgentFactory;
+    private int renderPoolSize = DocumentRenderer.DEFAULT_POOL_SIZE;
+    private boolean streamingMerge = false;
+    private RenderListener renderListener = RenderListener.NOOP;
+    private RenderResultCache resultCache;
+    private Duration renderTimeout;
+    private long maxHtmlChars;
+    private int maxPages;
+    private long maxImagePixels;
+    private long maxOutputBytes;
 
 
     public DocumentBuilder() {
@@ -61,6 +79,8 @@ public class DocumentBuilder {
         this.iTextOutputDevice = new ITextOutputDevice(ITextRenderer.DEFAULT_DOTS_PER_POINT);
         this.iTextUserAgent = new ResourcesUserAgent(iTextOutputDevice,
             ITextRenderer.DEFAULT_DOTS_PER_PIXEL);
+        this.renderSlot = new RenderSlot(dotsPerPoint, dotsPerPixel, iTextOutputDevice,
+            iTextUserAgent);
     }
 
     public DocumentBuilder(float dotsPerPoint,
@@ -71,6 +91,8 @@ public class DocumentBuilder {
         this.dotsPerPixel = dotsPerPixel;
         this.iTextOutputDevice = iTextOutputDevice;
         this.iTextUserAgent = iTextUserAgent;
+        this.renderSlot = new RenderSlot(dotsPerPoint, dotsPerPixel, iTextOutputDevice,
+            iTextUserAgent);
     }
 
     /**
@@ -82,79 +104,235 @@ public class DocumentBuilder {
      * @throws IOException
      */
     public static void addFont(String fontFilePath) throws IOException {
-        fontResolver.addFont(fontFilePath, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+        boolean lazy = lazyFontLoading;
+        FontLoadEvent event = FontLoadEvent.start(fontFilePath, lazy ? "scan" : "parse");
+        List<FontRegistry.FontFile> fonts;
+        try {
+            fonts = lazy ? FontRegistry.scan(fontFilePath) : FontRegistry.parse(fontFilePath);
+        } catch (IOException | RuntimeException e) {
+            event.finish(null);
+            throw e;
+        }
+        event.finish(fonts.stream().flatMap(font -> font.families().stream()).toList());
+        fontRegistry.register(fonts);
+    }
+
+    /**
+     * 设置是否延迟加载字体
+     * <p>
+     * 默认情况下注册字体时会完整地解析字体文件，字形数据一直留在内存中。启用后注册时只读取字体文件的名称表，
+     * 记录字体族名称与文件位置，排版第一次请求该字体族时才解析字体。此时字体文件的错误要到第一次使用时才会被发现，
+     * 只记录警告。只影响之后注册的字体。
+     *
+     * @param lazyFontLoading
+     */
+    public static void setLazyFontLoading(boolean lazyFontLoading) {
+        DocumentBuilder.lazyFontLoading = lazyFontLoading;
+    }
+
+    /**
+     * 设置字体的空闲时间，超过该时间没有被排版使用的字体会在之后的渲染开始前从内存中逐出，再次使用时从文件重新加载
+     * <p>
+     * 字体文件需要在注册后保持可读。正在进行中的渲染不受影响。
+     *
+     * @param idleTimeout 空闲时间，为 null 时不自动逐出（默认）
+     */
+    public static void setFontIdleTimeout(Duration idleTimeout) {
+        fontRegistry.setIdleTimeout(idleTimeout);
     }
 
     /**
-     * 查找当前系统的字体目录，将找到的字体假定为 CJK 字体加载
+     * 立即逐出超过给定时间没有被排版使用的字体
+     *
+     * @param idle 空闲时间，为 {@link Duration#ZERO} 时逐出所有已加载的字体
+     * @return 逐出的字体数量
+     */
+    public static int evictUnusedFonts(Duration idle) {
+        return fontRegistry.evictUnused(idle);
+    }
+
+    /**
+     * 并行地注册多个字体，并发数为 CPU 核数
+     *
+     * @param fontFilePaths 字体文件路径
+     * @return 加载的结果
+     * @see #addFonts(Collection, int)
+     */
+    public static FontLoadReport addFonts(Collection<String> fontFilePaths) {
+        return addFonts(fontFilePaths, FontLoader.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * 并行地注册多个字体
+     * <p>
+     * 字体文件在临时创建的线程池上解析，全部解析结束后一次性登记，之后创建的渲染器会同时看到这些字体。
+     * 单个文件加载失败时会记录在结果中，不会中断其他文件的加载。
+     *
+     * @param fontFilePaths 字体文件路径
+     * @param parallelism   同时解析的文件数量上限
+     * @return 加载的结果，包括每个文件的耗时与失败原因
+     */
+    public static FontLoadReport addFonts(Collection<String> fontFilePaths, int parallelism) {
+        long start = System.nanoTime();
+        List<FontLoader.Parsed> parsed = FontLoader.parseAll(List.copyOf(fontFilePaths),
+            parallelism, lazyFontLoading);
+        List<FontRegistry.FontFile> fonts = new ArrayList<>();
+        List<FontLoadReport.FileResult> files = new ArrayList<>(parsed.size());
+        for (FontLoader.Parsed each : parsed) {
+            fonts.addAll(each.fonts());
+            files.add(each.result());
+        }
+        fontRegistry.register(fonts);
+        return new FontLoadReport(List.copyOf(files), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * 查找当前系统的字体目录，将找到的字体假定为 CJK 字体并行加载
      *
      * @return 载入成功的字体
+     * @see #addFonts(Collection)
      */
     public static List<String> loadPreinstalledFontsAsCJKFont() {
-        List<String> loaded = new ArrayList<>(10);
-        List<Path> preInstallFontDirs = PathResolver.preinstalledFontPaths();
-        for (Path path : preInstallFontDirs) {
-            Stream<Path> pathStream;
+        FontLoadReport report = addFonts(discoverPreinstalledFonts().stream()
+            .map(Path::toString)
+            .toList());
+        logger.info("Loaded {} of {} preinstalled fonts in {} ms", report.loaded().size(),
+            report.files().size(), report.elapsed().toMillis());
+        return report.loaded();
+    }
+
+    /**
+     * 查找当前系统的字体目录，将找到的字体假定为 CJK 字体加载，并使用持久化的字体索引加快启动
+     * <p>
+     * 索引以文件路径、大小与修改时间为键记录字体族名称和加载结果。文件没有变化时直接使用索引中的字体族名称登记字体，
+     * 字体数据在模版第一次使用该字体族时才会被解析；已知无法加载的文件会被跳过。只有新增或修改过的文件会被重新解析，
+     * 这些文件会被并行解析。索引文件不存在时会被创建，无法写入时只记录警告。
+     *
+     * @param indexFile 字体索引文件的路径
+     * @return 载入成功的字体
+     */
+    public static List<String> loadPreinstalledFontsAsCJKFont(Path indexFile) {
+        long start = System.nanoTime();
+        FontIndex index = FontIndex.load(indexFile);
+        Map<String, FontIndex.Entry> entries = new LinkedHashMap<>();
+        Map<String, BasicFileAttributes> misses = new LinkedHashMap<>();
+        for (Path file : discoverPreinstalledFonts()) {
+            String path = file.toString();
+            BasicFileAttributes attributes;
             try {
-                pathStream = Files.walk(path);
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
             } catch (IOException ignored) {
-                logger.warn("Failed to walk through directory {} because {}", path,
+                logger.warn("Failed to read attributes of font {} because {}", file,
                     ignored.getMessage());
                 continue;
             }
-            List<Path> files = pathStream
-                .filter(Files::isRegularFile)
-                .filter(file -> {
-                    String fileName = file.toString().toLowerCase();
-                    return fileName.endsWith(".ttf")
-                        || fileName.endsWith(".otf")
-                        || fileName.endsWith(".ttc");
-                })
-                .toList();
-            for (Path file : files) {
-                try {
-                    fontResolver.addFont(file.toString(), BaseFont.IDENTITY_H,
-                        BaseFont.EMBEDDED);
-                    loaded.add(file.toString());
-                } catch (Exception ignored) {
-                    logger.warn(
-                        "Failed to load preinstalled font from directory {} because {}", path,
-                        ignored.getMessage());
-                }
+            FontIndex.Entry entry = index.lookup(path, attributes.size(),
+                attributes.lastModifiedTime().toMillis());
+            entries.put(path, entry);
+            if (entry == null) {
+                misses.put(path, attributes);
             }
         }
+        for (FontLoader.Parsed parsed : FontLoader.parseAll(List.copyOf(misses.keySet()),
+            FontLoader.DEFAULT_PARALLELISM, lazyFontLoading)) {
+            String path = parsed.result().path();
+            BasicFileAttributes attributes = misses.get(path);
+            FontIndex.Entry entry = new FontIndex.Entry(attributes.size(),
+                attributes.lastModifiedTime().toMillis(), parsed.result().isLoaded(),
+                parsed.fonts());
+            index.put(path, entry);
+            entries.put(path, entry);
+        }
+        List<String> loaded = new ArrayList<>(entries.size());
+        List<FontRegistry.FontFile> fonts = new ArrayList<>();
+        for (Map.Entry<String, FontIndex.Entry> entry : entries.entrySet()) {
+            if (entry.getValue().loaded()) {
+                fonts.addAll(entry.getValue().fonts());
+                loaded.add(entry.getKey());
+            }
+        }
+        fontRegistry.register(fonts);
+        index.retainAll(entries.keySet());
+        try {
+            index.save();
+        } catch (IOException e) {
+            logger.warn("Failed to write font index {} because {}", indexFile, e.getMessage());
+        }
+        logger.info("Loaded {} of {} preinstalled fonts ({} parsed) in {} ms", loaded.size(),
+            entries.size(), misses.size(), (System.nanoTime() - start) / 1_000_000);
         return loaded;
     }
 
+    private static List<Path> discoverPreinstalledFonts() {
+        List<Path> files = new ArrayList<>();
+        for (Path path : PathResolver.preinstalledFontPaths()) {
+            try (Stream<Path> pathStream = Files.walk(path)) {
+                pathStream
+                    .filter(Files::isRegularFile)
+                    .filter(file -> {
+                        String fileName = file.toString().toLowerCase();
+                        return fileName.endsWith(".ttf")
+                            || fileName.endsWith(".otf")
+                            || fileName.endsWith(".ttc");
+                    })
+                    .forEach(files::add);
+            } catch (IOException | UncheckedIOException ignored) {
+                logger.warn("Failed to walk through directory {} because {}", path,
+                    ignored.getMessage());
+            }
+        }
+        return files;
+    }
+
     /**
      * 获取已注册的字体，可以在作为模版的 HTML 中设置元素的 font-family 属性为列表中的值
      *
      * @return list of font family
      */
     public static List<String> listFontFamily() {
-        return fontResolver.getFonts().keySet().stream().toList();
+        return fontRegistry.familyNames();
+    }
+
+    static FontRegistry fontRegistry() {
+        return fontRegistry;
+    }
+
+    /**
+     * 设置按名称加载模版时使用的来源，默认为 {@link TemplateSource#classpath()}
+     * <p>
+     * 通过字符串或输入流加载的模版也会使用该来源的 Velocity 运行时解析
+     *
+     * @param templateSource 模版来源
+     * @return
+     */
+    public DocumentBuilder setTemplateSource(TemplateSource templateSource) {
+        this.templateSource = templateSource;
+        return this;
     }
 
     /**
-     * 使用 classpath 中的文件路径加载模版
+     * 按名称从模版来源加载模版
      * <p>
-     * 现版本设置了基于 classpath 的资源加载器，所以文件路径是相对于 classpath 的，作者还没有想到更好的方法允许调用者修改成别的方法。如果文件存储在 classpath
-     * 之外，请使用 {@link #loadTemplateFromStream(InputStream)} 或
+     * 默认的模版来源是 classpath，所以文件路径是相对于 classpath 的，可以通过 {@link #setTemplateSource(TemplateSource)}
+     * 改为从文件系统目录、内存或自定义的来源加载。也可以使用 {@link #loadTemplateFromStream(InputStream)} 或
      * {@link #loadTemplateFromPlainText(String)} 方法。
      *
-     * @param templateFileClassPath 模版的文件路径
+     * @param templateName 模版的名称，对于 classpath 和文件系统目录是文件路径
      * @return
      * @throws ResourceNotFoundException
      * @throws ParseErrorException
      */
-    public DocumentBuilder loadTemplate(String templateFileClassPath)
+    public DocumentBuilder loadTemplate(String templateName)
         throws ResourceNotFoundException, ParseErrorException {
-        template = velocityEngine.getTemplate(templateFileClassPath);
+        template = templateSource.getTemplate(templateName);
+        templateId = templateSource.id() + "/" + templateName;
         return this;
     }
 
     /**
      * 从输入流加载模版
+     * <p>
+     * 解析后的模版按内容的摘要缓存，相同内容的模版只会被解析一次
      *
      * @param inputStream 包含模版内容的输入流
      * @return
@@ -163,31 +341,126 @@ public class DocumentBuilder {
      */
     public DocumentBuilder loadTemplateFromStream(InputStream inputStream)
         throws IOException, ParseException {
-        template = new Template();
-        template.setRuntimeServices(runtimeServices);
+        return loadTemplateFromStream(inputStream, null);
+    }
+
+    /**
+     * 从输入流加载模版
+     *
+     * @param inputStream 包含模版内容的输入流
+     * @param cacheKey    附加在内容摘要之前的缓存键，例如租户或版本，可以为 null
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     * @see #loadTemplateFromPlainText(String, String)
+     */
+    public DocumentBuilder loadTemplateFromStream(InputStream inputStream, String cacheKey)
+        throws IOException, ParseException {
+        String templateContent;
         try (InputStreamReader reader = new InputStreamReader(inputStream)) {
-            template.setData(runtimeServices.parse(reader, template));
+            StringWriter writer = new StringWriter();
+            reader.transferTo(writer);
+            templateContent = writer.toString();
         }
-        template.initDocument();
-        return this;
+        return loadTemplateFromPlainText(templateContent, cacheKey);
     }
 
     /**
      * 从字符串加载模版
+     * <p>
+     * 解析后的模版按内容的摘要缓存，相同内容的模版只会被解析一次
      *
      * @param templateContent 包含模版内容的字符串
      * @return
      * @throws ParseException
      */
     public DocumentBuilder loadTemplateFromPlainText(String templateContent) throws ParseException {
-        StringReader reader = new StringReader(templateContent);
-        template = new Template();
-        template.setRuntimeServices(runtimeServices);
-        template.setData(runtimeServices.parse(reader, template));
-        template.initDocument();
+        return loadTemplateFromPlainText(templateContent, null);
+    }
+
+    /**
+     * 从字符串加载模版
+     * <p>
+     * 解析后的模版以 {@code cacheKey} 与内容的 SHA-256 摘要为键缓存，可以在多个线程与 DocumentBuilder 间共享。
+     * 模版存储在数据库中时，可以使用租户或版本号作为 {@code cacheKey}，避免不同来源的模版互相影响统计。
+     *
+     * @param templateContent 包含模版内容的字符串
+     * @param cacheKey        附加在内容摘要之前的缓存键，例如租户或版本，可以为 null
+     * @return
+     * @throws ParseException
+     */
+    public DocumentBuilder loadTemplateFromPlainText(String templateContent, String cacheKey)
+        throws ParseException {
+        String key = templateSource.id() + "/" + templateCacheKey(templateContent, cacheKey);
+        LruCache<String, Template> cache = templateCache;
+        Template cached = cache.get(key);
+        if (cached != null) {
+            template = cached;
+            templateId = key;
+            return this;
+        }
+        RuntimeServices runtimeServices = templateSource.runtimeServices();
+        Template parsed = new Template();
+        parsed.setName(key);
+        parsed.setRuntimeServices(runtimeServices);
+        parsed.setData(runtimeServices.parse(new StringReader(templateContent), parsed));
+        parsed.initDocument();
+        cache.put(key, parsed);
+        template = parsed;
+        templateId = key;
         return this;
     }
 
+    /**
+     * 设置解析后模版缓存的容量，会清空已缓存的模版
+     *
+     * @param maxSize 最多缓存的模版数量，为 0 时不缓存
+     */
+    public static void setTemplateCacheSize(int maxSize) {
+        templateCache = new LruCache<>(maxSize);
+    }
+
+    /**
+     * 获取解析后模版缓存的统计数据
+     *
+     * @return snapshot of {@link CacheStats}
+     */
+    public static CacheStats templateCacheStats() {
+        return templateCache.stats();
+    }
+
+    /**
+     * 设置解析后样式表缓存的容量，会清空已缓存的样式表
+     * <p>
+     * 外部样式表以 URI 为键、内联样式表以内容的摘要为键缓存，在所有渲染间共享。外部样式表在缓存期间的修改不会被察觉。
+     *
+     * @param maxSize 最多缓存的样式表数量，为 0 时不缓存
+     */
+    public static void setStylesheetCacheSize(int maxSize) {
+        CachingStyleReference.setCacheSize(maxSize);
+    }
+
+    /**
+     * 获取解析后样式表缓存的统计数据
+     *
+     * @return snapshot of {@link CacheStats}
+     */
+    public static CacheStats stylesheetCacheStats() {
+        return CachingStyleReference.cacheStats();
+    }
+
+    private static String templateCacheKey(String templateContent, String cacheKey) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String hash = HexFormat.of()
+            .formatHex(digest.digest(templateContent.getBytes(StandardCharsets.UTF_8)));
+        return cacheKey == null ? hash : cacheKey + "@" + hash;
+    }
+
     /**
      * 将数据合并到模版中
      *
@@ -214,7 +487,7 @@ public class DocumentBuilder {
     }
 
     /**
-     * 将文件写到输出流，
+     * 将文件写到输出流，设置了 {@link RenderResultCache} 时相同的模版与数据直接输出缓存的结果，
      * <B>NOTE:</B> Caller is responsible for cleaning up the OutputStream if
      * something goes wrong.
      *
@@ -222,16 +495,277 @@ public class DocumentBuilder {
      * @return
      */
     public DocumentBuilder save(OutputStream outputStream) {
-        ITextRenderer renderer = new ITextRenderer(dotsPerPoint, dotsPerPixel, iTextOutputDevice,
-            iTextUserAgent, fontResolver);
-        StringWriter stringWriter = new StringWriter();
-        template.merge(velocityContext, stringWriter);
-        renderer.setDocumentFromString(stringWriter.toString());
-        renderer.layout();
-        renderer.createPDF(outputStream);
+        save(template, templateId, velocityContext, newPipeline(), resultCache, outputStream);
         return this;
     }
 
+    /**
+     * 在内置的线程池中将文件写到输出流，线程池的容量为 CPU 核数
+     *
+     * @param outputStream
+     * @return 渲染结束时完成的 {@link CompletableFuture}
+     * @see #saveAsync(OutputStream, Executor)
+     */
+    public CompletableFuture<Void> saveAsync(OutputStream outputStream) {
+        return saveAsync(outputStream, null);
+    }
+
+    /**
+     * 在给定的线程池中将文件写到输出流
+     * <p>
+     * 调用时的模版与合并的数据会被复制，之后可以 {@link #reset()} 并准备下一份文档，但在返回的 {@link CompletableFuture}
+     * 完成前不能再次调用 {@code save} 系列方法，需要并发渲染时请使用 {@link DocumentRenderer#renderAsync(Map, OutputStream)}。
+     * <p>
+     * 通过 {@link #setRenderTimeout(Duration)} 设置的时限从调用时开始计算，包括排队的时间。
+     * 取消返回的 {@link CompletableFuture} 后，渲染会在下一个检查点停止，输出流中可能已经写入了部分内容。
+     * <B>NOTE:</B> Caller is responsible for cleaning up the OutputStream if
+     * something goes wrong.
+     *
+     * @param outputStream
+     * @param executor     执行渲染的线程池，为 null 时使用内置的线程池
+     * @return 渲染结束时完成的 {@link CompletableFuture}，超时时以 {@link RenderTimeoutException} 失败
+     */
+    public CompletableFuture<Void> saveAsync(OutputStream outputStream, Executor executor) {
+        Template currentTemplate = template;
+        String currentTemplateId = templateId;
+        VelocityContext context = new VelocityContext();
+        for (String name : velocityContext.getKeys()) {
+            context.put(name, velocityContext.get(name));
+        }
+        RenderPipeline pipeline = newPipeline();
+        RenderResultCache cache = resultCache;
+        return pipeline.runAsync(executor,
+            () -> save(currentTemplate, currentTemplateId, context, pipeline, cache,
+                outputStream));
+    }
+
+    private void save(Template template, String templateId, VelocityContext context,
+        RenderPipeline pipeline, RenderResultCache cache, OutputStream outputStream) {
+        if (cache == null) {
+            pipeline.run(renderSlot.newRenderer(), template, context, outputStream);
+            return;
+        }
+        Map<String, Object> data = new HashMap<>();
+        for (String name : context.getKeys()) {
+            data.put(name, context.get(name));
+        }
+        cache.render(templateId, template, dotsPerPoint, dotsPerPixel, pipeline.limits(),
+            pipeline.deadline(), data, outputStream,
+            output -> pipeline.run(renderSlot.newRenderer(), template, context, output));
+    }
+
+    /**
+     * 将每条数据分别合并到模版中，依次写入同一个 PDF 文件
+     * <p>
+     * 通过 {@link #merge(Map)} 合并的数据对每条数据都可见，同名时以每条数据中的值为准。
+     * 每条数据单独排版并在排版后立即写出，字体与相同的图片只会嵌入一次。
+     * <B>NOTE:</B> Caller is responsible for cleaning up the OutputStream if
+     * something goes wrong.
+     *
+     * @param records      每个元素对应文件中的一段内容，不能为空
+     * @param outputStream
+     * @return
+     * @see DocumentRenderer#renderCombined(Iterable, OutputStream)
+     */
+    public DocumentBuilder saveCombined(Iterable<Map<String, Object>> records,
+        OutputStream outputStream) {
+        VelocityContext shared = velocityContext;
+        newPipeline().runAll(renderSlot.newRenderer(), template, records,
+            record -> new VelocityContext(new HashMap<>(record), shared), false, outputStream);
+        return this;
+    }
+
+    /**
+     * 将通过 {@link #merge(Map)} 合并的 {@code key} 对应的集合切分为若干段，每段单独合并、排版后接续写入同一个 PDF 文件
+     * <p>
+     * 同一时刻内存中只保留一段数据的 DOM 与盒模型，每段写完后立即 flush 输出流。
+     * <B>NOTE:</B> Caller is responsible for cleaning up the OutputStream if
+     * something goes wrong.
+     *
+     * @param key          需要切分的集合的名称，值可以是 {@link Iterable} 或 {@link java.util.Iterator}
+     * @param chunkSize    每段的元素数量，建议为每页行数的整数倍
+     * @param outputStream
+     * @return
+     * @see DocumentRenderer#renderChunked(Map, String, int, OutputStream)
+     */
+    public DocumentBuilder saveChunked(String key, int chunkSize, OutputStream outputStream) {
+        Map<String, Object> shared = new HashMap<>();
+        for (String name : velocityContext.getKeys()) {
+            shared.put(name, velocityContext.get(name));
+        }
+        Iterable<RenderPipeline.Chunk> chunks = RenderPipeline.chunks(shared.remove(key),
+            chunkSize);
+        newPipeline().runAll(renderSlot.newRenderer(), template, chunks,
+            chunk -> chunk.toContext(shared, key), true, outputStream);
+        return this;
+    }
+
+    private RenderPipeline newPipeline() {
+        return new RenderPipeline(streamingMerge, renderListener, renderTimeout,
+            new RenderLimits(maxHtmlChars, maxPages, maxImagePixels, maxOutputBytes));
+    }
+
+    /**
+     * 设置合并后 XHTML 的最大字符数，对之后的渲染以及之后创建的 {@link DocumentRenderer} 生效
+     * <p>
+     * 合并模版时超出上限会立即抛出 {@link RenderLimitExceededException}，不会继续合并与解析。默认为 0，即不限制。
+     *
+     * @param maxHtmlChars
+     * @return
+     */
+    public DocumentBuilder setMaxHtmlChars(long maxHtmlChars) {
+        this.maxHtmlChars = maxHtmlChars;
+        return this;
+    }
+
+    /**
+     * 设置文档的最大页数，对之后的渲染以及之后创建的 {@link DocumentRenderer} 生效
+     * <p>
+     * 排版结束后超出上限会抛出 {@link RenderLimitExceededException}，不会写出 PDF。
+     * 将多条数据写入同一个文件时按整个文件的页数计算。默认为 0，即不限制。
+     *
+     * @param maxPages
+     * @return
+     */
+    public DocumentBuilder setMaxPages(int maxPages) {
+        this.maxPages = maxPages;
+        return this;
+    }
+
+    /**
+     * 设置单张图片解码后的最大像素数，对之后的渲染以及之后创建的 {@link DocumentRenderer} 生效
+     * <p>
+     * {@link ResourcesUserAgent} 加载图片时在解码之前读取文件头检查尺寸，{@link cc.ddrpa.motto.html.embedded.EmbeddedImage} 在转换为 PDF 图像之前检查，
+     * 超出上限时抛出 {@link RenderLimitExceededException}。使用其他 {@link ITextUserAgent} 时不做检查。默认为 0，即不限制。
+     *
+     * @param maxImagePixels 例如 {@code 4096 * 4096}
+     * @return
+     */
+    public DocumentBuilder setMaxImagePixels(long maxImagePixels) {
+        this.maxImagePixels = maxImagePixels;
+        return this;
+    }
+
+    /**
+     * 设置输出的最大字节数，对之后的渲染以及之后创建的 {@link DocumentRenderer} 生效
+     * <p>
+     * 写出 PDF 时超出上限会立即抛出 {@link RenderLimitExceededException}，超出的部分不会写入输出流，
+     * 但输出流中可能已经写入了部分内容。默认为 0，即不限制。
+     *
+     * @param maxOutputBytes
+     * @return
+     */
+    public DocumentBuilder setMaxOutputBytes(long maxOutputBytes) {
+        this.maxOutputBytes = maxOutputBytes;
+        return this;
+    }
+
+    /**
+     * 设置每次渲染的时限，对之后的 {@code save} 系列方法以及之后创建的 {@link DocumentRenderer} 生效
+     * <p>
+     * 在模版合并、解析、排版与写出 PDF 各阶段之间，以及合并时写出文本、排版与写出 PDF 时测量和绘制文本的过程中检查，
+     * 超时后抛出 {@link RenderTimeoutException}。检查是协作式的，模版中调用的方法阻塞时不会被打断。
+     * 默认为 null，即没有时限。
+     *
+     * @param renderTimeout
+     * @return
+     */
+    public DocumentBuilder setRenderTimeout(Duration renderTimeout) {
+        this.renderTimeout = renderTimeout;
+        return this;
+    }
+
+    /**
+     * 设置是否以流式的方式合并模版
+     * <p>
+     * 默认情况下模版会先完整地合并到内存中再交给 XML 解析器。启用后模版在另一个线程中合并，
+     * 通过容量为 {@value RenderPipeline#STREAMING_BUFFER_SIZE} 个字符的管道边生成边解析，
+     * 生成很大的文档时内存占用只与 DOM 的大小相关。注意此时模版中调用的方法运行在另一个线程中。
+     *
+     * @param streamingMerge
+     * @return
+     */
+    public DocumentBuilder setStreamingMerge(boolean streamingMerge) {
+        this.streamingMerge = streamingMerge;
+        return this;
+    }
+
+    /**
+     * 设置接收渲染统计数据的监听器，对之后的 {@link #save(OutputStream)} 以及之后创建的 {@link DocumentRenderer} 生效
+     * <p>
+     * 每份文档渲染完成后监听器会收到各阶段的耗时、XHTML 的大小、页数、输出的字节数与图片缓存的命中次数。
+     * 默认为 {@link RenderListener#NOOP}，此时不会采集任何数据。可以使用 {@link MicrometerRenderListener} 写入 Micrometer。
+     *
+     * @param renderListener
+     * @return
+     */
+    public DocumentBuilder setRenderListener(RenderListener renderListener) {
+        this.renderListener = renderListener == null ? RenderListener.NOOP : renderListener;
+        return this;
+    }
+
+    /**
+     * 设置渲染结果缓存，对之后的 {@link #save(OutputStream)} 以及之后创建的 {@link DocumentRenderer} 生效
+     * <p>
+     * 模版与合并的数据都相同时直接输出缓存的 PDF 文件，同时发起的相同请求只渲染一次。
+     * 默认为 null，即不使用缓存。{@link #saveCombined(Iterable, OutputStream)} 与
+     * {@link #saveChunked(String, int, OutputStream)} 不使用缓存。
+     *
+     * @param resultCache
+     * @return
+     */
+    public DocumentBuilder setResultCache(RenderResultCache resultCache) {
+        this.resultCache = resultCache;
+        return this;
+    }
+
+    /**
+     * 设置 {@link DocumentRenderer} 为每个渲染槽位创建 {@link ITextUserAgent} 的方法
+     * <p>
+     * 默认为每个槽位创建一个 {@link ResourcesUserAgent}
+     *
+     * @param userAgentFactory
+     * @return
+     */
+    public DocumentBuilder setUserAgentFactory(
+        Function<ITextOutputDevice, ITextUserAgent> userAgentFactory) {
+        this.userAgentFactory = userAgentFactory;
+        return this;
+    }
+
+    /**
+     * 设置 {@link DocumentRenderer} 最多保留的空闲渲染槽位数量
+     *
+     * @param renderPoolSize
+     * @return
+     */
+    public DocumentBuilder setRenderPoolSize(int renderPoolSize) {
+        this.renderPoolSize = renderPoolSize;
+        return this;
+    }
+
+    /**
+     * 使用已加载的模版创建一个线程安全的 {@link DocumentRenderer}
+     * <p>
+     * 渲染器共享编译后的模版和字体，每次渲染从池中借用独立的 {@link ITextOutputDevice} 与 {@link ITextUserAgent}，
+     * 因此一个实例可以同时服务多个线程。构造 DocumentBuilder 时传入的 {@link ITextUserAgent} 实例不会被使用，
+     * 请通过 {@link #setUserAgentFactory(Function)} 指定。
+     *
+     * @return instance of {@link DocumentRenderer}
+     */
+    public DocumentRenderer buildRenderer() {
+        if (template == null) {
+            throw new IllegalStateException("Template is not loaded");
+        }
+        Function<ITextOutputDevice, ITextUserAgent> factory = userAgentFactory;
+        if (factory == null) {
+            int pixel = dotsPerPixel;
+            factory = device -> new ResourcesUserAgent(device, pixel);
+        }
+        return new DocumentRenderer(template, templateId, dotsPerPoint, dotsPerPixel, factory,
+            renderPoolSize, newPipeline(), resultCache);
+    }
+
     /**
      * 重置 DocumentBuilder 的状态，用于创建下一个文档
      *
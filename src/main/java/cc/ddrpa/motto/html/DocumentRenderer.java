@@ -0,0 +1,286 @@
+package cc.ddrpa.motto.html;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.pdf.ITextOutputDevice;
+import org.xhtmlrenderer.pdf.ITextUserAgent;
+
+/**
+ * 线程安全的文档渲染器
+ * <p>
+ * 与 {@link DocumentBuilder} 不同，渲染器只持有不可变的共享状态（编译后的模版、字体与分辨率设置），
+ * 每次渲染使用独立的 {@link VelocityContext}，并从池中借用 {@link ITextOutputDevice} 与 {@link ITextUserAgent}，
+ * 因此一个实例可以同时被多个线程调用。通过 {@link DocumentBuilder#buildRenderer()} 创建。
+ */
+public class DocumentRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentRenderer.class);
+
+    public static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    public static final int DEFAULT_BATCH_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    /**
+     * 分段渲染时当前段的序号在模版中的名称
+     */
+    public static final String CHUNK_INDEX_KEY = "chunkIndex";
+    private static final AtomicInteger batchThreadCounter = new AtomicInteger();
+
+    private final Template template;
+    private final String templateId;
+    private final float dotsPerPoint;
+    private final int dotsPerPixel;
+    private final RenderPipeline pipeline;
+    private final RenderSlotPool pool;
+    private final RenderResultCache resultCache;
+
+    DocumentRenderer(Template template,
+        String templateId,
+        float dotsPerPoint,
+        int dotsPerPixel,
+        Function<ITextOutputDevice, ITextUserAgent> userAgentFactory,
+        int poolSize,
+        RenderPipeline pipeline,
+        RenderResultCache resultCache) {
+        this.template = template;
+        this.templateId = templateId;
+        this.dotsPerPoint = dotsPerPoint;
+        this.dotsPerPixel = dotsPerPixel;
+        this.pipeline = pipeline;
+        this.resultCache = resultCache;
+        this.pool = new RenderSlotPool(
+            () -> new RenderSlot(dotsPerPoint, dotsPerPixel, userAgentFactory), poolSize);
+    }
+
+    /**
+     * 将数据合并到模版中并将文件写到输出流，设置了 {@link RenderResultCache} 时相同的数据直接输出缓存的结果，
+     * <B>NOTE:</B> Caller is responsible for cleaning up the OutputStream if
+     * something goes wrong.
+     *
+     * @param dataMap      模版数据，不会被修改
+     * @param outputStream
+     */
+    public void render(Map<String, Object> dataMap, OutputStream outputStream) {
+        if (resultCache == null) {
+            renderUncached(dataMap, outputStream);
+        } else {
+            resultCache.render(templateId, template, dotsPerPoint, dotsPerPixel,
+                pipeline.limits(), pipeline.deadline(), dataMap, outputStream,
+                output -> renderUncached(dataMap, output));
+        }
+    }
+
+    /**
+     * 在内置的线程池中渲染，线程池的容量为 CPU 核数
+     *
+     * @param dataMap      模版数据，不会被修改
+     * @param outputStream
+     * @return 渲染结束时完成的 {@link CompletableFuture}
+     * @see #renderAsync(Map, OutputStream, Executor)
+     */
+    public CompletableFuture<Void> renderAsync(Map<String, Object> dataMap,
+        OutputStream outputStream) {
+        return renderAsync(dataMap, outputStream, null);
+    }
+
+    /**
+     * 在给定的线程池中渲染
+     * <p>
+     * 通过 {@link DocumentBuilder#setRenderTimeout(java.time.Duration)} 设置的时限从调用时开始计算，包括排队的时间。
+     * 取消返回的 {@link CompletableFuture} 后，渲染会在下一个检查点停止并丢弃使用的渲染槽位，输出流中可能已经写入了部分内容。
+     * <B>NOTE:</B> Caller is responsible for cleaning up the OutputStream if
+     * something goes wrong.
+     *
+     * @param dataMap      模版数据，不会被修改
+     * @param outputStream
+     * @param executor     执行渲染的线程池，为 null 时使用内置的线程池
+     * @return 渲染结束时完成的 {@link CompletableFuture}，超时时以 {@link RenderTimeoutException} 失败
+     */
+    public CompletableFuture<Void> renderAsync(Map<String, Object> dataMap,
+        OutputStream outputStream, Executor executor) {
+        Map<String, Object> data = new HashMap<>(dataMap);
+        return pipeline.runAsync(executor, () -> render(data, outputStream));
+    }
+
+    private void renderUncached(Map<String, Object> dataMap, OutputStream outputStream) {
+        VelocityContext velocityContext = new VelocityContext(new HashMap<>(dataMap));
+        RenderSlot slot = pool.borrow();
+        // 渲染失败时槽位的状态不可预期，直接丢弃而不归还
+        pipeline.run(slot.newRenderer(), template, velocityContext, outputStream);
+        pool.release(slot);
+    }
+
+    /**
+     * 将每条数据分别合并到模版中，依次写入同一个 PDF 文件
+     * <p>
+     * 每条数据单独排版并在排版后立即写出，内存占用与单条数据相关而与数据条数无关，数据源可以是逐条读取的游标。
+     * 所有数据共用同一个 PDF 写入器，字体、样式表以及相同的图片只会嵌入一次。
+     * 每条数据的页码（{@code counter(page)} 与 {@code counter(pages)}）独立计算。
+     * <B>NOTE:</B> Caller is responsible for cleaning up the OutputStream if
+     * something goes wrong.
+     *
+     * @param records      每个元素对应文件中的一段内容，不能为空
+     * @param outputStream
+     * @return 写入的数据条数
+     */
+    public int renderCombined(Iterable<Map<String, Object>> records, OutputStream outputStream) {
+        RenderSlot slot = pool.borrow();
+        int count = pipeline.runAll(slot.newRenderer(), template, records,
+            record -> new VelocityContext(new HashMap<>(record)), false, outputStream);
+        pool.release(slot);
+        return count;
+    }
+
+    /**
+     * 将 {@code dataMap} 中 {@code key} 对应的集合切分为若干段，每段单独合并、排版后接续写入同一个 PDF 文件
+     * <p>
+     * 用于生成很长的文档（例如数千行的表格）：同一时刻内存中只保留一段数据的 DOM 与盒模型，每段写完后立即 flush 输出流，
+     * 调用方可以更早地收到数据。每段从新的一页开始，模版中可以通过 {@code $chunkIndex}（从 0 开始）判断当前是第几段，
+     * 例如只在第一段输出标题。{@code counter(page)} 连续计算，{@code counter(pages)} 只计算到当前段为止。
+     * <B>NOTE:</B> Caller is responsible for cleaning up the OutputStream if
+     * something goes wrong.
+     *
+     * @param dataMap      模版数据，不会被修改
+     * @param key          需要切分的集合在模版数据中的名称，值可以是 {@link Iterable} 或 {@link java.util.Iterator}
+     * @param chunkSize    每段的元素数量，建议为每页行数的整数倍
+     * @param outputStream
+     * @return 写入的段数
+     */
+    public int renderChunked(Map<String, Object> dataMap, String key, int chunkSize,
+        OutputStream outputStream) {
+        Map<String, Object> shared = new HashMap<>(dataMap);
+        Iterable<RenderPipeline.Chunk> chunks = RenderPipeline.chunks(shared.remove(key),
+            chunkSize);
+        RenderSlot slot = pool.borrow();
+        int count = pipeline.runAll(slot.newRenderer(), template, chunks,
+            chunk -> chunk.toContext(shared, key), true, outputStream);
+        pool.release(slot);
+        return count;
+    }
+
+    /**
+     * 批量渲染文档，并发数为 {@link #DEFAULT_BATCH_PARALLELISM}
+     *
+     * @param records 每个元素对应一份文档的数据
+     * @param outputs 根据文档序号（从 0 开始）提供输出流，输出流会在渲染结束后被关闭
+     * @return 批量渲染的结果
+     * @see #renderBatch(Iterable, Function, Executor, int)
+     */
+    public BatchResult renderBatch(Iterable<Map<String, Object>> records,
+        Function<Integer, OutputStream> outputs) {
+        return renderBatch(records, outputs, DEFAULT_BATCH_PARALLELISM);
+    }
+
+    /**
+     * 使用临时创建的线程池批量渲染文档，方法返回前线程池会被关闭
+     *
+     * @param records     每个元素对应一份文档的数据
+     * @param outputs     根据文档序号（从 0 开始）提供输出流，输出流会在渲染结束后被关闭
+     * @param parallelism 同时渲染的文档数量上限
+     * @return 批量渲染的结果
+     * @see #renderBatch(Iterable, Function, Executor, int)
+     */
+    public BatchResult renderBatch(Iterable<Map<String, Object>> records,
+        Function<Integer, OutputStream> outputs,
+        int parallelism) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable,
+                "motto-batch-" + batchThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            return renderBatch(records, outputs, executor, parallelism);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 在给定的线程池上批量渲染文档
+     * <p>
+     * 输入是惰性读取的，同时在途的文档不会超过 {@code parallelism}，读取下一条数据前会等待空位，
+     * 因此数据源可以是从数据库中逐条读取的游标。单个文档失败时会记录在结果中，不会中断其他文档的渲染。
+     * 方法会阻塞到所有文档渲染结束。
+     *
+     * @param records     每个元素对应一份文档的数据
+     * @param outputs     根据文档序号（从 0 开始）提供输出流，输出流会在渲染结束后被关闭
+     * @param executor    执行渲染任务的线程池
+     * @param parallelism 同时渲染的文档数量上限
+     * @return 批量渲染的结果
+     */
+    public BatchResult renderBatch(Iterable<Map<String, Object>> records,
+        Function<Integer, OutputStream> outputs,
+        Executor executor,
+        int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        Semaphore permits = new Semaphore(parallelism);
+        ConcurrentLinkedQueue<BatchResult.Failure> failures = new ConcurrentLinkedQueue<>();
+        int index = 0;
+        try {
+            for (Map<String, Object> record : records) {
+                permits.acquire();
+                int current = index++;
+                try {
+                    executor.execute(() -> {
+                        try {
+                            renderTo(record, outputs, current);
+                        } catch (Throwable e) {
+                            logger.warn("Failed to render document #{} because {}", current,
+                                e.getMessage());
+                            failures.add(new BatchResult.Failure(current, e));
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // 线程池拒绝了任务
+                    permits.release();
+                    failures.add(new BatchResult.Failure(current, e));
+                }
+            }
+            // 等待所有在途的文档
+            permits.acquire(parallelism);
+            permits.release(parallelism);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rendering batch", e);
+        }
+        List<BatchResult.Failure> sorted = new ArrayList<>(failures);
+        sorted.sort(Comparator.comparingInt(BatchResult.Failure::index));
+        return new BatchResult(index, List.copyOf(sorted));
+    }
+
+    private void renderTo(Map<String, Object> record, Function<Integer, OutputStream> outputs,
+        int index) throws IOException {
+        try (OutputStream outputStream = outputs.apply(index)) {
+            render(record, outputStream);
+        }
+    }
+
+    /**
+     * 当前空闲的渲染槽位数量
+     *
+     * @return idle slot count
+     */
+    public int idleSlots() {
+        return pool.idleSize();
+    }
+}
@@ -0,0 +1,177 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.FontRegistry.FontFile;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 持久化的字体索引，以文件路径、大小与修改时间为键记录字体族名称以及是否能够加载
+ * <p>
+ * 文件没有变化时可以直接使用索引中的字体族名称登记字体而无需解析，已知无法加载的文件也不会被重复尝试。
+ */
+class FontIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(FontIndex.class);
+    private static final String VERSION_KEY = "@version";
+    private static final String VERSION = "1";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String NAME_SEPARATOR = "\u001f";
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 索引中的一个字体文件
+     *
+     * @param size         文件大小
+     * @param lastModified 文件修改时间（毫秒）
+     * @param loaded       是否能够加载
+     * @param fonts        文件中的字体，无法加载时为空
+     */
+    record Entry(long size, long lastModified, boolean loaded, List<FontFile> fonts) {
+
+    }
+
+    private FontIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 读取索引文件，文件不存在或无法识别时返回空的索引
+     *
+     * @param file 索引文件路径
+     * @return instance of {@link FontIndex}
+     */
+    static FontIndex load(Path file) {
+        FontIndex index = new FontIndex(file);
+        if (!Files.isRegularFile(file)) {
+            return index;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Failed to read font index {} because {}", file, e.getMessage());
+            return index;
+        }
+        if (!VERSION.equals(properties.getProperty(VERSION_KEY))) {
+            return index;
+        }
+        for (String path : properties.stringPropertyNames()) {
+            if (VERSION_KEY.equals(path)) {
+                continue;
+            }
+            Entry entry = decode(properties.getProperty(path));
+            if (entry != null) {
+                index.entries.put(path, entry);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 查找与文件当前状态一致的记录
+     *
+     * @param path         文件路径
+     * @param size         文件大小
+     * @param lastModified 文件修改时间（毫秒）
+     * @return 文件没有变化时返回记录，否则返回 null
+     */
+    Entry lookup(String path, long size, long lastModified) {
+        Entry entry = entries.get(path);
+        if (entry == null || entry.size() != size || entry.lastModified() != lastModified) {
+            return null;
+        }
+        return entry;
+    }
+
+    void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    /**
+     * 移除已经不存在的文件的记录
+     *
+     * @param paths 仍然存在的文件路径
+     */
+    void retainAll(Set<String> paths) {
+        entries.keySet().retainAll(paths);
+    }
+
+    /**
+     * 写入索引文件，先写入临时文件再替换，避免进程中断时留下不完整的索引
+     *
+     * @throws IOException
+     */
+    void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(VERSION_KEY, VERSION);
+        entries.forEach((path, entry) -> properties.setProperty(path, encode(entry)));
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "motto-html font index");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * 编码为 {@code size \t lastModified \t loaded [\t path \u001f family \u001f family ...]...}
+     */
+    private static String encode(Entry entry) {
+        StringBuilder builder = new StringBuilder()
+            .append(entry.size()).append(FIELD_SEPARATOR)
+            .append(entry.lastModified()).append(FIELD_SEPARATOR)
+            .append(entry.loaded());
+        for (FontFile font : entry.fonts()) {
+            builder.append(FIELD_SEPARATOR).append(font.path());
+            for (String family : font.families()) {
+                builder.append(NAME_SEPARATOR).append(family);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static Entry decode(String value) {
+        String[] fields = value.split(FIELD_SEPARATOR);
+        if (fields.length < 3) {
+            return null;
+        }
+        try {
+            List<FontFile> fonts = new ArrayList<>(fields.length - 3);
+            for (int i = 3; i < fields.length; i++) {
+                String[] names = fields[i].split(NAME_SEPARATOR);
+                fonts.add(new FontFile(names[0],
+                    List.copyOf(Arrays.asList(names).subList(1, names.length))));
+            }
+            return new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                Boolean.parseBoolean(fields[2]), List.copyOf(fonts));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
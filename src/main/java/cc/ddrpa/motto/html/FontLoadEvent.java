@@ -0,0 +1,60 @@
+package cc.ddrpa.motto.html;
+
+import java.io.File;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 加载一个字体文件的 JFR 事件
+ */
+@Name("cc.ddrpa.motto.FontLoad")
+@Label("Font Load")
+@Category({"Motto", "Font"})
+@Description("Parsing or scanning one font file")
+@StackTrace(false)
+class FontLoadEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("Mode")
+    @Description("parse: full parse at registration, scan: name table only, materialize: deferred parse during layout")
+    String mode;
+
+    @Label("Families")
+    String families;
+
+    @Label("File Size")
+    @DataAmount
+    long fileSize;
+
+    @Label("Failed")
+    boolean failed;
+
+    static FontLoadEvent start(String path, String mode) {
+        FontLoadEvent event = new FontLoadEvent();
+        event.path = path;
+        event.mode = mode;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 结束计时，超过阈值时补充文件大小后提交
+     *
+     * @param families 字体族名称，失败时为 null
+     */
+    void finish(Iterable<String> families) {
+        end();
+        if (shouldCommit()) {
+            this.failed = families == null;
+            this.families = families == null ? null : String.join(", ", families);
+            this.fileSize = new File(path).length();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package cc.ddrpa.motto.html;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 批量加载字体的结果，单个字体文件的失败不会中断其他文件的加载
+ *
+ * @param files   每个字体文件的加载结果，与输入的顺序一致
+ * @param elapsed 整个批次的耗时，包括登记字体
+ */
+public record FontLoadReport(List<FileResult> files, Duration elapsed) {
+
+    /**
+     * 载入成功的字体文件路径
+     *
+     * @return list of path
+     */
+    public List<String> loaded() {
+        return files.stream()
+            .filter(FileResult::isLoaded)
+            .map(FileResult::path)
+            .toList();
+    }
+
+    /**
+     * 载入失败的字体文件
+     *
+     * @return list of failed file
+     */
+    public List<FileResult> failures() {
+        return files.stream()
+            .filter(file -> !file.isLoaded())
+            .toList();
+    }
+
+    /**
+     * 单个字体文件的加载结果
+     *
+     * @param path     字体文件路径
+     * @param families 字体文件中的字体族名称，加载失败时为空
+     * @param elapsed  解析该文件的耗时
+     * @param failure  失败的原因，加载成功时为 null
+     */
+    public record FileResult(String path, List<String> families, Duration elapsed,
+                             Throwable failure) {
+
+        public boolean isLoaded() {
+            return failure == null;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.FontLoadReport.FileResult;
+import cc.ddrpa.motto.html.FontRegistry.FontFile;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 在临时线程池上并行解析字体文件
+ * <p>
+ * 解析字体文件主要是读取文件与构建字形表，各文件之间没有依赖，OpenPDF 的字体缓存本身是线程安全的。
+ * 解析的结果由调用方一次性登记到 {@link FontRegistry}，渲染槽位不会看到只加载了一部分的字体。
+ */
+class FontLoader {
+
+    static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static final Logger logger = LoggerFactory.getLogger(FontLoader.class);
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private FontLoader() {
+    }
+
+    /**
+     * 单个字体文件的解析结果
+     *
+     * @param result 对外报告的结果
+     * @param fonts  需要登记的字体，TrueType Collection 会被展开，加载失败时为空
+     */
+    record Parsed(FileResult result, List<FontFile> fonts) {
+
+    }
+
+    /**
+     * 解析字体文件，方法会阻塞到所有文件解析结束
+     *
+     * @param paths       字体文件路径
+     * @param parallelism 同时解析的文件数量上限
+     * @param lazy        是否只读取字体族名称，见 {@link FontRegistry#scan(String)}
+     * @return 与输入顺序一致的解析结果
+     */
+    static List<Parsed> parseAll(List<String> paths, int parallelism, boolean lazy) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        List<Parsed> results = new ArrayList<>(paths.size());
+        int threads = Math.min(parallelism, paths.size());
+        if (threads <= 1) {
+            for (String path : paths) {
+                results.add(parse(path, lazy));
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "motto-font-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Callable<Parsed>> tasks = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                tasks.add(() -> parse(path, lazy));
+            }
+            for (Future<Parsed> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading fonts", e);
+        } catch (ExecutionException e) {
+            // parse 不会抛出异常，这里只可能是 Error
+            throw new IllegalStateException("Failed to load fonts", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private static Parsed parse(String path, boolean lazy) {
+        long start = System.nanoTime();
+        FontLoadEvent event = FontLoadEvent.start(path, lazy ? "scan" : "parse");
+        try {
+            List<FontFile> fonts = lazy ? FontRegistry.scan(path) : FontRegistry.parse(path);
+            Set<String> families = new LinkedHashSet<>();
+            fonts.forEach(font -> families.addAll(font.families()));
+            event.finish(families);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            logger.debug("Parsed font {} in {} ms", path, elapsed.toMillis());
+            return new Parsed(new FileResult(path, List.copyOf(families), elapsed, null), fonts);
+        } catch (Exception e) {
+            event.finish(null);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            logger.warn("Failed to load font {} because {}", path, e.getMessage());
+            return new Parsed(new FileResult(path, List.of(), elapsed, e), List.of());
+        }
+    }
+}
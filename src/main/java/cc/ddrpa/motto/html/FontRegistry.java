@@ -0,0 +1,279 @@
+package cc.ddrpa.motto.html;
+
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.DocumentException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.pdf.CJKFontResolver;
+import org.xhtmlrenderer.pdf.ITextFontResolver;
+import org.xhtmlrenderer.pdf.TrueTypeUtil;
+
+/**
+ * 已注册字体的登记表
+ * <p>
+ * {@link ITextFontResolver} 在渲染过程中会修改内部的缓存，不能在多个线程间共享，因此登记表只记录字体文件与字体族名称，
+ * 由 {@link #newResolver()} 为每个渲染槽位创建独立的字体解析器。
+ * <p>
+ * 登记表同时记录每个字体文件最近一次被排版使用的时间，长时间未使用的字体可以从 OpenPDF 的字体缓存中逐出，
+ * 逐出后登记表的版本号会增加，渲染槽位重建字体解析器时释放对字体数据的引用，之后再次使用时从文件重新加载。
+ */
+class FontRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(FontRegistry.class);
+
+    private final List<FontFile> fonts = new CopyOnWriteArrayList<>();
+    private final Set<String> paths = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+    private final AtomicLong nextEvictionCheck = new AtomicLong();
+    private volatile Duration idleTimeout;
+    private volatile List<String> builtinFamilies;
+
+    /**
+     * 一个字体文件，对于 TrueType Collection 是其中的一个字体，路径形如 {@code simsun.ttc,0}
+     *
+     * @param path     字体文件路径
+     * @param families 字体包含的字体族名称
+     */
+    record FontFile(String path, List<String> families) {
+
+    }
+
+    /**
+     * 完整地解析字体文件并获取其中的字体族名称，解析后的字体会进入 OpenPDF 的字体缓存
+     *
+     * @param path 字体文件路径
+     * @return 字体文件中的字体，TrueType Collection 会被展开
+     * @throws IOException
+     */
+    static List<FontFile> parse(String path) throws IOException {
+        String lower = path.toLowerCase();
+        if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.contains(".ttc,")) {
+            BaseFont font = BaseFont.createFont(path, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+            return List.of(new FontFile(path,
+                TrueTypeUtil.getFamilyNames(font).stream().distinct().toList()));
+        } else if (lower.endsWith(".ttc")) {
+            String[] names = BaseFont.enumerateTTCNames(path);
+            List<FontFile> result = new ArrayList<>(names.length);
+            for (int i = 0; i < names.length; i++) {
+                result.addAll(parse(path + "," + i));
+            }
+            return result;
+        }
+        throw new IOException("Unsupported font type: " + path);
+    }
+
+    /**
+     * 只读取字体文件的名称表获取字体族名称，不构建字形数据，字体在第一次被使用时才会被完整地解析
+     *
+     * @param path 字体文件路径
+     * @return 字体文件中的字体，TrueType Collection 会被展开
+     * @throws IOException
+     */
+    static List<FontFile> scan(String path) throws IOException {
+        String lower = path.toLowerCase();
+        if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.contains(".ttc,")) {
+            String[][] names;
+            try {
+                names = (String[][]) BaseFont.getAllFontNames(path, BaseFont.IDENTITY_H, null)[1];
+            } catch (DocumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            return List.of(new FontFile(path, familyNames(names)));
+        } else if (lower.endsWith(".ttc")) {
+            String[] names = BaseFont.enumerateTTCNames(path);
+            List<FontFile> result = new ArrayList<>(names.length);
+            for (int i = 0; i < names.length; i++) {
+                result.addAll(scan(path + "," + i));
+            }
+            return result;
+        }
+        throw new IOException("Unsupported font type: " + path);
+    }
+
+    /**
+     * 与 {@link TrueTypeUtil#getFamilyNames(BaseFont)} 相同的规则：只有一条记录时直接使用，
+     * 否则取 Unicode 平台与英语（美国）的名称
+     */
+    private static List<String> familyNames(String[][] names) {
+        if (names.length == 1) {
+            return List.of(names[0][3]);
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (String[] name : names) {
+            if ((name[0].equals("1") && name[1].equals("0")) || name[2].equals("1033")) {
+                result.add(name[3]);
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    /**
+     * 登记字体，一次登记的字体会同时对新创建的字体解析器可见，已经登记过的路径会被跳过
+     *
+     * @param files
+     */
+    void register(Collection<FontFile> files) {
+        List<FontFile> added = new ArrayList<>(files.size());
+        for (FontFile file : files) {
+            if (paths.add(file.path())) {
+                added.add(file);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        fonts.addAll(added);
+        long now = System.nanoTime();
+        for (FontFile file : added) {
+            // 已经完整解析过的字体同样计入使用时间，长时间未使用时可以被逐出
+            if (FontCacheAccess.contains(file.path())) {
+                lastUsed.putIfAbsent(file.path(), now);
+            }
+        }
+        generation.incrementAndGet();
+    }
+
+    /**
+     * 记录字体文件被排版使用
+     *
+     * @param path 字体文件路径
+     */
+    void markUsed(String path) {
+        lastUsed.put(path, System.nanoTime());
+    }
+
+    /**
+     * 字体是否已被完整解析并留在 OpenPDF 的字体缓存中
+     *
+     * @param path 字体文件路径
+     * @return true if loaded
+     */
+    boolean isLoaded(String path) {
+        return FontCacheAccess.contains(path);
+    }
+
+    /**
+     * 设置字体的空闲时间，超过该时间未被使用的字体会在之后的渲染开始前被逐出
+     *
+     * @param idleTimeout 为 null 时不自动逐出
+     */
+    void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        nextEvictionCheck.set(System.nanoTime());
+    }
+
+    /**
+     * 设置了空闲时间时按需逐出字体，两次检查的间隔不小于空闲时间的四分之一
+     */
+    void evictIfDue() {
+        Duration timeout = idleTimeout;
+        if (timeout == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        long next = nextEvictionCheck.get();
+        if (now - next < 0) {
+            return;
+        }
+        long interval = Math.max(timeout.toNanos() / 4, Duration.ofSeconds(1).toNanos());
+        if (nextEvictionCheck.compareAndSet(next, now + interval)) {
+            evictUnused(timeout);
+        }
+    }
+
+    /**
+     * 逐出超过给定时间未被使用的字体
+     *
+     * @param idle 空闲时间
+     * @return 逐出的字体数量
+     */
+    int evictUnused(Duration idle) {
+        long deadline = System.nanoTime() - idle.toNanos();
+        int evicted = 0;
+        for (Map.Entry<String, Long> entry : lastUsed.entrySet()) {
+            if (entry.getValue() - deadline <= 0
+                && lastUsed.remove(entry.getKey(), entry.getValue())) {
+                FontCacheAccess.remove(entry.getKey());
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            generation.incrementAndGet();
+            logger.debug("Evicted {} fonts unused for {}", evicted, idle);
+        }
+        return evicted;
+    }
+
+    /**
+     * 登记表的版本号，每次变更后增加，渲染槽位据此判断字体解析器是否需要重建
+     *
+     * @return generation
+     */
+    int generation() {
+        return generation.get();
+    }
+
+    /**
+     * 创建一个新的字体解析器，登记的字体在模版第一次使用其字体族时才会被加入解析器
+     *
+     * @return instance of {@link ITextFontResolver}
+     */
+    ITextFontResolver newResolver() {
+        return new RegistryFontResolver(this, List.copyOf(fonts));
+    }
+
+    /**
+     * 内置的 CJK 字体与已登记字体的字体族名称
+     *
+     * @return list of font family
+     */
+    List<String> familyNames() {
+        Set<String> names = new LinkedHashSet<>(builtinFamilies());
+        for (FontFile font : fonts) {
+            names.addAll(font.families());
+        }
+        return List.copyOf(names);
+    }
+
+    private List<String> builtinFamilies() {
+        List<String> families = builtinFamilies;
+        if (families == null) {
+            families = new CJKFontResolver().getFonts().keySet().stream().toList();
+            builtinFamilies = families;
+        }
+        return families;
+    }
+
+    /**
+     * 访问 OpenPDF 以 {@code 路径、编码、是否嵌入} 为键的全局字体缓存，只用于 Identity-H 编码的嵌入字体
+     * <p>
+     * 缓存是 {@link BaseFont} 的 protected 静态字段，这里通过一个不会被实例化的子类访问。
+     */
+    private abstract static class FontCacheAccess extends BaseFont {
+
+        private static String key(String path) {
+            return path + "\n" + BaseFont.IDENTITY_H + "\n" + BaseFont.EMBEDDED;
+        }
+
+        static boolean contains(String path) {
+            return fontCache.containsKey(key(path));
+        }
+
+        static void remove(String path) {
+            fontCache.remove(key(path));
+        }
+    }
+}
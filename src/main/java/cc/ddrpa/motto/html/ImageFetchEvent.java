@@ -0,0 +1,34 @@
+package cc.ddrpa.motto.html;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * {@link ResourcesUserAgent} 获取一张图片的 JFR 事件
+ */
+@Name("cc.ddrpa.motto.ImageFetch")
+@Label("Image Fetch")
+@Category({"Motto", "Image"})
+@Description("Image requested by layout through ResourcesUserAgent")
+@StackTrace(false)
+class ImageFetchEvent extends jdk.jfr.Event {
+
+    @Label("URI")
+    String uri;
+
+    @Label("Cache Hit")
+    @Description("Served from the shared image cache or resolved from the EmbeddedImage registry")
+    boolean cacheHit;
+
+    @Label("Width")
+    float width;
+
+    @Label("Height")
+    float height;
+
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,55 @@
+package cc.ddrpa.motto.html;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Map;
+import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.runtime.resource.Resource;
+import org.apache.velocity.runtime.resource.loader.ResourceLoader;
+import org.apache.velocity.util.ExtProperties;
+
+/**
+ * 从 {@link Map} 中读取模版的资源加载器
+ * <p>
+ * Map 中的内容没有修改时间，这里以内容的指纹代替，Velocity 检查修改时比较的是加载时与当前的指纹
+ */
+class MapResourceLoader extends ResourceLoader {
+
+    private final Map<String, String> templates;
+
+    MapResourceLoader(Map<String, String> templates) {
+        this.templates = templates;
+    }
+
+    @Override
+    public void init(ExtProperties configuration) {
+    }
+
+    @Override
+    public Reader getResourceReader(String source, String encoding)
+        throws ResourceNotFoundException {
+        String content = templates.get(source);
+        if (content == null) {
+            throw new ResourceNotFoundException("Template not found in memory: " + source);
+        }
+        return new StringReader(content);
+    }
+
+    @Override
+    public boolean isSourceModified(Resource resource) {
+        return fingerprint(resource.getName()) != resource.getLastModified();
+    }
+
+    @Override
+    public long getLastModified(Resource resource) {
+        return fingerprint(resource.getName());
+    }
+
+    private long fingerprint(String name) {
+        String content = templates.get(name);
+        if (content == null) {
+            return 0;
+        }
+        return ((long) content.hashCode() << 32) | content.length();
+    }
+}
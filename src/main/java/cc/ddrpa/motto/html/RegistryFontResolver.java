@@ -0,0 +1,122 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.FontRegistry.FontFile;
+import cc.ddrpa.motto.html.metrics.RenderPhase;
+import com.lowagie.text.pdf.BaseFont;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.css.value.FontSpecification;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.pdf.CJKFontResolver;
+import org.xhtmlrenderer.render.FSFont;
+
+/**
+ * 按需加入登记字体的字体解析器
+ * <p>
+ * 创建时只记录字体族名称到字体文件的映射，排版第一次请求某个字体族时才把对应的字体文件加入解析器，
+ * 未被模版使用的字体不会占用解析器。排版使用已加入的字体时会向登记表报告使用时间，供逐出长时间未使用的字体。
+ * 不是线程安全的，每个渲染槽位持有一个实例。
+ */
+class RegistryFontResolver extends CJKFontResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistryFontResolver.class);
+
+    /**
+     * 同一个字体族两次记录使用时间的最小间隔
+     */
+    private static final long MARK_USED_INTERVAL = Duration.ofSeconds(1).toNanos();
+
+    private final FontRegistry registry;
+    private final Map<String, List<String>> familyPaths = new HashMap<>();
+    private final Map<String, List<String>> pendingPaths = new HashMap<>();
+    private final Set<String> addedPaths = new HashSet<>();
+    private final Map<String, Long> markedAt = new HashMap<>();
+
+    RegistryFontResolver(FontRegistry registry, List<FontFile> fonts) {
+        this.registry = registry;
+        for (FontFile font : fonts) {
+            for (String family : font.families()) {
+                familyPaths.computeIfAbsent(family, key -> new ArrayList<>()).add(font.path());
+            }
+        }
+        familyPaths.forEach((family, paths) -> pendingPaths.put(family, new ArrayList<>(paths)));
+    }
+
+    @Override
+    public FSFont resolveFont(SharedContext renderingContext, FontSpecification spec) {
+        if (!familyPaths.isEmpty() && spec.families != null) {
+            // 按声明顺序加入字体，找到可用的字体族后即停止，后面的备选字体不会被加载
+            for (String family : spec.families) {
+                String normalized = normalize(family);
+                addPendingFamily(normalized);
+                markUsed(normalized);
+                if (getFonts().containsKey(normalized)) {
+                    break;
+                }
+            }
+        }
+        return super.resolveFont(renderingContext, spec);
+    }
+
+    private void addPendingFamily(String family) {
+        List<String> paths = pendingPaths.remove(family);
+        if (paths == null) {
+            return;
+        }
+        RenderRecorder recorder = RenderRecorder.current();
+        long startedAt = recorder == null ? 0 : System.nanoTime();
+        for (String path : paths) {
+            if (!addedPaths.add(path)) {
+                continue;
+            }
+            FontLoadEvent event = FontLoadEvent.start(path, "materialize");
+            try {
+                addFont(path, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+                event.finish(List.of(family));
+            } catch (Exception e) {
+                event.finish(null);
+                logger.warn("Failed to add font {} for family {} because {}", path, family,
+                    e.getMessage());
+            }
+        }
+        if (recorder != null) {
+            recorder.add(RenderPhase.FONT_LOAD, System.nanoTime() - startedAt);
+        }
+    }
+
+    private void markUsed(String family) {
+        List<String> paths = familyPaths.get(family);
+        if (paths == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        Long last = markedAt.get(family);
+        if (last != null && now - last < MARK_USED_INTERVAL) {
+            return;
+        }
+        markedAt.put(family, now);
+        for (String path : paths) {
+            if (addedPaths.contains(path)) {
+                registry.markUsed(path);
+            }
+        }
+    }
+
+    private static String normalize(String family) {
+        String result = family;
+        if (result.startsWith("\"")) {
+            result = result.substring(1);
+        }
+        if (result.endsWith("\"")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+}
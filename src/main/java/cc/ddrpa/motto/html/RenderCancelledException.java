@@ -0,0 +1,28 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.metrics.RenderPhase;
+
+/**
+ * 渲染被取消，例如对应的 {@link java.util.concurrent.CompletableFuture} 被取消
+ */
+public class RenderCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final RenderPhase phase;
+
+    RenderCancelledException(String message, RenderPhase phase) {
+        super(message + " during " + phase);
+        this.phase = phase;
+    }
+
+    /**
+     * 渲染停止时所处的阶段
+     *
+     * @return one of {@link RenderPhase#MERGE}, {@link RenderPhase#PARSE}, {@link RenderPhase#LAYOUT}
+     * and {@link RenderPhase#PDF}
+     */
+    public RenderPhase getPhase() {
+        return phase;
+    }
+}
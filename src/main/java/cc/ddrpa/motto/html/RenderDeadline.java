@@ -0,0 +1,140 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.metrics.RenderPhase;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+
+/**
+ * 一次渲染的截止时间与取消标记
+ * <p>
+ * 在各阶段之间、模版合并写出文本时以及排版与输出 PDF 测量、绘制文本时被检查，超时或被取消时抛出
+ * {@link RenderTimeoutException} 或 {@link RenderCancelledException}，渲染线程随之退出
+ */
+class RenderDeadline {
+
+    /**
+     * 没有时限、不能取消，检查的开销可以忽略
+     */
+    static final RenderDeadline NONE = new RenderDeadline(null);
+    /**
+     * 频繁调用的位置每隔多少次检查一次
+     */
+    static final int CHECK_INTERVAL = 64;
+
+    private static final ThreadLocal<RenderDeadline> current = new ThreadLocal<>();
+
+    private final Duration timeout;
+    private final long deadline;
+    private volatile boolean cancelled;
+    private volatile RenderPhase phase = RenderPhase.MERGE;
+
+    private RenderDeadline(Duration timeout) {
+        this.timeout = timeout;
+        this.deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+    }
+
+    /**
+     * 从现在开始计时
+     *
+     * @param timeout 时限，为 null 时没有时限，但仍然可以被取消
+     */
+    static RenderDeadline after(Duration timeout) {
+        return new RenderDeadline(timeout);
+    }
+
+    /**
+     * 当前线程绑定的截止时间，没有绑定时按 {@code timeout} 新建
+     */
+    static RenderDeadline currentOr(Duration timeout) {
+        RenderDeadline deadline = current.get();
+        if (deadline != null) {
+            return deadline;
+        }
+        return timeout == null ? NONE : after(timeout);
+    }
+
+    /**
+     * 绑定到当前线程，供无法直接传递参数的文本测量与绘制使用
+     *
+     * @return 之前绑定的截止时间
+     */
+    static RenderDeadline bind(RenderDeadline deadline) {
+        RenderDeadline previous = current.get();
+        if (deadline == null || deadline == NONE) {
+            current.remove();
+        } else {
+            current.set(deadline);
+        }
+        return previous;
+    }
+
+    /**
+     * 检查当前线程绑定的截止时间
+     */
+    static void checkCurrent() {
+        RenderDeadline deadline = current.get();
+        if (deadline != null) {
+            deadline.check();
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 进入下一个阶段前检查
+     */
+    void enter(RenderPhase phase) {
+        this.phase = phase;
+        check();
+    }
+
+    void check() {
+        if (cancelled) {
+            throw new RenderCancelledException("Render cancelled", phase);
+        }
+        if (timeout != null && System.nanoTime() - deadline > 0) {
+            throw new RenderTimeoutException(timeout, phase);
+        }
+    }
+
+    /**
+     * 包装模版合并时写出的 {@link Writer}，每写出 {@value #CHECK_INTERVAL} 次检查一次
+     */
+    Writer guard(Writer writer) {
+        if (this == NONE) {
+            return writer;
+        }
+        return new FilterWriter(writer) {
+
+            private int writes;
+
+            @Override
+            public void write(int c) throws IOException {
+                tick();
+                super.write(c);
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                tick();
+                super.write(cbuf, off, len);
+            }
+
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                tick();
+                super.write(str, off, len);
+            }
+
+            private void tick() {
+                if (++writes % CHECK_INTERVAL == 0) {
+                    check();
+                }
+            }
+        };
+    }
+}
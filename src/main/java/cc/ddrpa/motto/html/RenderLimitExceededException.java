@@ -0,0 +1,73 @@
+package cc.ddrpa.motto.html;
+
+/**
+ * 渲染超出了通过 {@link DocumentBuilder} 设置的资源上限，例如页数或图片的像素数
+ * <p>
+ * 在超出上限时立即抛出，不会继续执行后续的排版或输出
+ */
+public class RenderLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Limit limit;
+    private final long maximum;
+    private final long actual;
+
+    RenderLimitExceededException(Limit limit, long maximum, long actual, String subject) {
+        super(subject == null
+            ? limit + " exceeded limit " + maximum + ": " + actual
+            : limit + " of " + subject + " exceeded limit " + maximum + ": " + actual);
+        this.limit = limit;
+        this.maximum = maximum;
+        this.actual = actual;
+    }
+
+    /**
+     * 超出的上限
+     *
+     * @return limit type
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * 设置的上限
+     *
+     * @return maximum value
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * 超出上限时的实际值，对于流式检查的上限是检查时已经达到的值，不一定是最终的值
+     *
+     * @return actual value
+     */
+    public long getActual() {
+        return actual;
+    }
+
+    /**
+     * 资源上限的种类
+     */
+    public enum Limit {
+        /**
+         * 合并后的 XHTML 的字符数
+         */
+        HTML_CHARS,
+        /**
+         * 排版后的页数
+         */
+        PAGES,
+        /**
+         * 单张图片解码后的像素数
+         */
+        IMAGE_PIXELS,
+        /**
+         * 输出的 PDF 文件的字节数
+         */
+        OUTPUT_BYTES
+    }
+}
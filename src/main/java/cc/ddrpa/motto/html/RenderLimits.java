@@ -0,0 +1,133 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.RenderLimitExceededException.Limit;
+import java.io.FilterOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * 一次渲染的资源上限，为 0 的项不做限制
+ *
+ * @param maxHtmlChars   合并后的 XHTML 的最大字符数
+ * @param maxPages       排版后的最大页数
+ * @param maxImagePixels 单张图片解码后的最大像素数
+ * @param maxOutputBytes 输出的最大字节数
+ */
+record RenderLimits(long maxHtmlChars, int maxPages, long maxImagePixels, long maxOutputBytes) {
+
+    static final RenderLimits NONE = new RenderLimits(0, 0, 0, 0);
+
+    private static final ThreadLocal<RenderLimits> current = new ThreadLocal<>();
+
+    /**
+     * 绑定到当前线程，供 {@link ResourcesUserAgent} 加载图片时检查
+     *
+     * @return 之前绑定的上限
+     */
+    static RenderLimits bind(RenderLimits limits) {
+        RenderLimits previous = current.get();
+        if (limits == null || limits.maxImagePixels == 0) {
+            current.remove();
+        } else {
+            current.set(limits);
+        }
+        return previous;
+    }
+
+    /**
+     * 当前线程绑定的上限
+     *
+     * @return 没有绑定时返回 {@link #NONE}
+     */
+    static RenderLimits current() {
+        RenderLimits limits = current.get();
+        return limits == null ? NONE : limits;
+    }
+
+    void checkPages(int pages) {
+        if (maxPages > 0 && pages > maxPages) {
+            throw new RenderLimitExceededException(Limit.PAGES, maxPages, pages, null);
+        }
+    }
+
+    void checkImage(String uri, long width, long height) {
+        if (maxImagePixels > 0 && width * height > maxImagePixels) {
+            throw new RenderLimitExceededException(Limit.IMAGE_PIXELS, maxImagePixels,
+                width * height, uri);
+        }
+    }
+
+    /**
+     * 合并模版时统计写出的字符数，超出上限时立即停止合并
+     */
+    Writer guardHtml(Writer writer) {
+        if (maxHtmlChars == 0) {
+            return writer;
+        }
+        return new FilterWriter(writer) {
+
+            private long written;
+
+            @Override
+            public void write(int c) throws IOException {
+                count(1);
+                super.write(c);
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                count(len);
+                super.write(cbuf, off, len);
+            }
+
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                count(len);
+                super.write(str, off, len);
+            }
+
+            private void count(int len) {
+                written += len;
+                if (written > maxHtmlChars) {
+                    throw new RenderLimitExceededException(Limit.HTML_CHARS, maxHtmlChars,
+                        written, null);
+                }
+            }
+        };
+    }
+
+    /**
+     * 统计输出的字节数，超出上限时在写入之前停止
+     */
+    OutputStream guardOutput(OutputStream outputStream) {
+        if (maxOutputBytes == 0) {
+            return outputStream;
+        }
+        return new FilterOutputStream(outputStream) {
+
+            private long written;
+
+            @Override
+            public void write(int b) throws IOException {
+                count(1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                count(len);
+                out.write(b, off, len);
+            }
+
+            private void count(int len) {
+                written += len;
+                if (written > maxOutputBytes) {
+                    throw new RenderLimitExceededException(Limit.OUTPUT_BYTES, maxOutputBytes,
+                        written, null);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.metrics.RenderPhase;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 渲染中一个阶段的 JFR 事件，覆盖模版合并、XHTML 解析、排版与写出 PDF
+ */
+@Name("cc.ddrpa.motto.RenderPhase")
+@Label("Render Phase")
+@Category({"Motto", "Render"})
+@Description("One phase of rendering a document: merge, parse, layout or PDF output")
+@StackTrace(false)
+class RenderPhaseEvent extends jdk.jfr.Event {
+
+    @Label("Template")
+    String template;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("HTML Characters")
+    @Description("Characters produced by the template merge")
+    long htmlChars;
+
+    @Label("Pages")
+    int pages;
+
+    /**
+     * 创建并开始计时
+     */
+    static RenderPhaseEvent start(String template, RenderPhase phase) {
+        RenderPhaseEvent event = new RenderPhaseEvent();
+        event.template = template;
+        event.phase = phase.name();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 结束计时，超过阈值时提交
+     */
+    void finish() {
+        end();
+        if (shouldCommit()) {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.embedded.ImageRegistry;
+import cc.ddrpa.motto.html.metrics.RenderListener;
+import cc.ddrpa.motto.html.metrics.RenderPhase;
+import com.lowagie.text.ExceptionConverter;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.context.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xml.sax.InputSource;
+
+/**
+ * 模版合并、解析、排版与输出 PDF 的流程，由 {@link DocumentBuilder} 与 {@link DocumentRenderer} 共用
+ */
+class RenderPipeline {
+
+    /**
+     * 流式合并时管道的容量（字符数）
+     */
+    static final int STREAMING_BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderPipeline.class);
+
+    private static final AtomicInteger mergeThreadCounter = new AtomicInteger();
+    private static final ExecutorService mergeExecutor = Executors.newCachedThreadPool(
+        runnable -> {
+            Thread thread = new Thread(runnable,
+                "motto-merge-" + mergeThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private static final AtomicInteger asyncThreadCounter = new AtomicInteger();
+    private static final ExecutorService asyncExecutor = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable,
+                "motto-render-" + asyncThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private final boolean streamingMerge;
+    private final RenderListener listener;
+    private final Duration timeout;
+    private final RenderLimits limits;
+
+    RenderPipeline(boolean streamingMerge, RenderListener listener, Duration timeout,
+        RenderLimits limits) {
+        this.streamingMerge = streamingMerge;
+        this.listener = listener;
+        this.timeout = timeout;
+        this.limits = limits;
+    }
+
+    RenderLimits limits() {
+        return limits;
+    }
+
+    /**
+     * 当前线程绑定的截止时间，没有绑定时从现在开始计算
+     */
+    RenderDeadline deadline() {
+        return RenderDeadline.currentOr(timeout);
+    }
+
+    /**
+     * 在线程池中执行渲染，时限从提交时开始计算
+     * <p>
+     * 返回的 {@link CompletableFuture} 被取消时，渲染会在下一个检查点抛出 {@link RenderCancelledException} 并释放线程
+     *
+     * @param executor 为 null 时使用容量为 CPU 核数的内置线程池
+     * @param task     在绑定了截止时间的线程中执行的渲染
+     */
+    CompletableFuture<Void> runAsync(Executor executor, Runnable task) {
+        RenderDeadline deadline = RenderDeadline.after(timeout);
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            RenderDeadline previous = RenderDeadline.bind(deadline);
+            try {
+                // 排队期间已经超时或被取消的渲染不再开始
+                deadline.check();
+                task.run();
+            } finally {
+                RenderDeadline.bind(previous);
+            }
+        }, executor == null ? asyncExecutor : executor);
+        future.whenComplete((ignored, e) -> {
+            if (future.isCancelled()) {
+                deadline.cancel();
+            }
+        });
+        return future;
+    }
+
+    void run(ITextRenderer renderer, Template template, Context context,
+        OutputStream outputStream) {
+        UserAgentCallback userAgent = prepare(renderer);
+        RenderDeadline deadline = RenderDeadline.currentOr(timeout);
+        RenderRecorder recorder = RenderRecorder.start(listener, template.getName());
+        OutputStream output = counting(limits.guardOutput(outputStream));
+        ImageRegistry images = newImageRegistry(userAgent);
+        ImageRegistry previous = ImageRegistry.bind(images);
+        RenderRecorder previousRecorder = RenderRecorder.bind(recorder);
+        RenderDeadline previousDeadline = RenderDeadline.bind(deadline);
+        RenderLimits previousLimits = RenderLimits.bind(limits);
+        try {
+            deadline.enter(RenderPhase.MERGE);
+            renderer.setDocument(merge(template, context, images, recorder, deadline), null);
+            recorder.lap(RenderPhase.PARSE);
+            deadline.enter(RenderPhase.LAYOUT);
+            layout(renderer, template);
+            recorder.lap(RenderPhase.LAYOUT);
+            limits.checkPages(pageCount(renderer));
+            deadline.enter(RenderPhase.PDF);
+            RenderPhaseEvent event = RenderPhaseEvent.start(template.getName(), RenderPhase.PDF);
+            try {
+                renderer.createPDF(output);
+            } catch (ExceptionConverter e) {
+                throw unwrap(e);
+            }
+            event.pages = pageCount(renderer);
+            event.finish();
+            recorder.lap(RenderPhase.PDF);
+        } finally {
+            ImageRegistry.bind(previous);
+            RenderRecorder.bind(previousRecorder);
+            RenderDeadline.bind(previousDeadline);
+            RenderLimits.bind(previousLimits);
+        }
+        if (recorder.isEnabled()) {
+            recorder.setPages(pageCount(renderer));
+            recorder.setOutputBytes(written(output));
+            emit(recorder);
+        }
+    }
+
+    /**
+     * 将每条数据分别合并、排版后依次写入同一个 PDF 文件
+     * <p>
+     * 每条数据排版完成后立即写出，下一条数据排版时上一条的 DOM 与盒模型即可被回收。
+     * 所有数据共用同一个 PdfWriter，字体以及同一个图片实例只会嵌入一次。
+     *
+     * @param continuousPageNumbers 为 true 时页码接着上一条数据继续计算，否则每条数据从 1 开始
+     * @return 写入的数据条数
+     */
+    <T> int runAll(ITextRenderer renderer, Template template, Iterable<T> records,
+        Function<T, Context> contextFactory, boolean continuousPageNumbers,
+        OutputStream outputStream) {
+        UserAgentCallback userAgent = prepare(renderer);
+        // 时限对所有数据整体生效
+        RenderDeadline deadline = RenderDeadline.currentOr(timeout);
+        OutputStream output = counting(limits.guardOutput(outputStream));
+        int count = 0;
+        int pages = 0;
+        long recordStartedAt = 0;
+        RenderRecorder recorder = null;
+        for (T record : records) {
+            if (recorder != null) {
+                emit(recorder);
+            }
+            recorder = RenderRecorder.start(listener, template.getName());
+            recordStartedAt = written(output);
+            ImageRegistry images = newImageRegistry(userAgent);
+            ImageRegistry previous = ImageRegistry.bind(images);
+            RenderRecorder previousRecorder = RenderRecorder.bind(recorder);
+            RenderDeadline previousDeadline = RenderDeadline.bind(deadline);
+            RenderLimits previousLimits = RenderLimits.bind(limits);
+            try {
+                deadline.enter(RenderPhase.MERGE);
+                renderer.setDocument(
+                    merge(template, contextFactory.apply(record), images, recorder, deadline),
+                    null);
+                recorder.lap(RenderPhase.PARSE);
+                deadline.enter(RenderPhase.LAYOUT);
+                layout(renderer, template);
+                recorder.lap(RenderPhase.LAYOUT);
+                // 页数上限对整个文件生效
+                limits.checkPages(pages + pageCount(renderer));
+                deadline.enter(RenderPhase.PDF);
+                RenderPhaseEvent event = RenderPhaseEvent.start(template.getName(),
+                    RenderPhase.PDF);
+                // initialPageNo 为 0 时从 1 开始编号，否则从 initialPageNo 开始
+                int initialPageNo = continuousPageNumbers && pages > 0 ? pages + 1 : 0;
+                try {
+                    if (count == 0) {
+                        renderer.createPDF(output, false, initialPageNo);
+                    } else {
+                        renderer.writeNextDocument(initialPageNo);
+                    }
+                    // PdfWriter 内部带有缓冲，已完成的页面尽早交给调用方
+                    renderer.getWriter().flush();
+                } catch (ExceptionConverter e) {
+                    throw unwrap(e);
+                }
+                event.pages = pageCount(renderer);
+                pages += event.pages;
+                event.finish();
+                recorder.lap(RenderPhase.PDF);
+            } finally {
+                ImageRegistry.bind(previous);
+                RenderRecorder.bind(previousRecorder);
+                RenderDeadline.bind(previousDeadline);
+                RenderLimits.bind(previousLimits);
+            }
+            if (recorder.isEnabled()) {
+                recorder.setPages(pageCount(renderer));
+                recorder.setOutputBytes(written(output) - recordStartedAt);
+            }
+            count++;
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("No records to render");
+        }
+        try {
+            renderer.finishPDF();
+        } catch (ExceptionConverter e) {
+            throw unwrap(e);
+        }
+        // 文件末尾的交叉引用表与字体计入最后一条数据
+        recorder.lap(RenderPhase.PDF);
+        if (recorder.isEnabled()) {
+            recorder.setOutputBytes(written(output) - recordStartedAt);
+            emit(recorder);
+        }
+        return count;
+    }
+
+    /**
+     * 将数据惰性地切分为若干段，每段最多 {@code chunkSize} 个元素
+     *
+     * @param rows      {@link Iterable} 或 {@link Iterator}
+     * @param chunkSize 每段的元素数量上限
+     */
+    static Iterable<Chunk> chunks(Object rows, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        Iterator<?> source;
+        if (rows instanceof Iterable<?> iterable) {
+            source = iterable.iterator();
+        } else if (rows instanceof Iterator<?> iterator) {
+            source = iterator;
+        } else {
+            throw new IllegalArgumentException(
+                "Expected an Iterable or Iterator but got " + rows);
+        }
+        Iterator<Chunk> chunks = new Iterator<>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public Chunk next() {
+                if (!source.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<Object> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && source.hasNext()) {
+                    chunk.add(source.next());
+                }
+                return new Chunk(index++, chunk);
+            }
+        };
+        // 数据源只能遍历一次
+        return () -> chunks;
+    }
+
+    /**
+     * 切分后的一段数据
+     *
+     * @param index 从 0 开始的序号
+     * @param rows  这一段中的元素
+     */
+    record Chunk(int index, List<Object> rows) {
+
+        /**
+         * 以共享的数据为基础创建这一段的模版上下文
+         */
+        VelocityContext toContext(Map<String, Object> shared, String key) {
+            VelocityContext context = new VelocityContext(new HashMap<>(shared));
+            context.put(key, rows);
+            context.put(DocumentRenderer.CHUNK_INDEX_KEY, index);
+            return context;
+        }
+    }
+
+    private static UserAgentCallback prepare(ITextRenderer renderer) {
+        UserAgentCallback userAgent = renderer.getSharedContext().getUserAgentCallback();
+        // 解析后的样式表在多次渲染间共享
+        renderer.getSharedContext().setCss(new CachingStyleReference(userAgent));
+        return userAgent;
+    }
+
+    /**
+     * 只有 ResourcesUserAgent 能解析 EmbeddedImage 的短 URI，其他 UserAgent 仍然使用 data URL
+     */
+    private static ImageRegistry newImageRegistry(UserAgentCallback userAgent) {
+        return userAgent instanceof ResourcesUserAgent ? new ImageRegistry() : null;
+    }
+
+    private Document merge(Template template, Context context, ImageRegistry images,
+        RenderRecorder recorder, RenderDeadline deadline) {
+        return streamingMerge
+            ? mergeStreaming(template, context, images, recorder, deadline)
+            : mergeBuffered(template, context, recorder, deadline);
+    }
+
+    private static void layout(ITextRenderer renderer, Template template) {
+        RenderPhaseEvent event = RenderPhaseEvent.start(template.getName(), RenderPhase.LAYOUT);
+        renderer.layout();
+        event.pages = pageCount(renderer);
+        event.finish();
+    }
+
+    /**
+     * OpenPDF 将写出时的异常包装为 {@link ExceptionConverter}，还原超出资源上限与取消渲染的异常
+     */
+    private static RuntimeException unwrap(ExceptionConverter e) {
+        Exception cause = e.getException();
+        return cause instanceof RenderLimitExceededException
+            || cause instanceof RenderCancelledException
+            ? (RuntimeException) cause
+            : e;
+    }
+
+    private static int pageCount(ITextRenderer renderer) {
+        return renderer.getRootBox().getLayer().getPages().size();
+    }
+
+    /**
+     * 需要统计输出字节数时包装输出流
+     */
+    private OutputStream counting(OutputStream outputStream) {
+        return listener == RenderListener.NOOP
+            ? outputStream
+            : new CountingOutputStream(outputStream);
+    }
+
+    private static long written(OutputStream outputStream) {
+        return outputStream instanceof CountingOutputStream counting ? counting.count : 0;
+    }
+
+    private void emit(RenderRecorder recorder) {
+        try {
+            listener.onRender(recorder.toMetrics());
+        } catch (RuntimeException e) {
+            logger.warn("Render listener failed because {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 将模版合并到缓冲区后直接从缓冲区解析，避免再复制出一个完整的 {@link String}
+     */
+    private Document mergeBuffered(Template template, Context context, RenderRecorder recorder,
+        RenderDeadline deadline) {
+        ExposedCharArrayWriter writer = new ExposedCharArrayWriter();
+        RenderPhaseEvent event = RenderPhaseEvent.start(template.getName(), RenderPhase.MERGE);
+        template.merge(context, deadline.guard(limits.guardHtml(writer)));
+        event.htmlChars = writer.size();
+        event.finish();
+        recorder.lap(RenderPhase.MERGE);
+        recorder.setHtmlChars(writer.size());
+        deadline.enter(RenderPhase.PARSE);
+        return parse(template, writer.reader());
+    }
+
+    /**
+     * 在另一个线程中合并模版，通过容量固定的管道边生成边解析，内存中只保留 DOM 与管道中的一段文本
+     */
+    private Document mergeStreaming(Template template, Context context, ImageRegistry images,
+        RenderRecorder recorder, RenderDeadline deadline) {
+        CharPipe pipe = new CharPipe(STREAMING_BUFFER_SIZE);
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+            // 不使用 try-with-resources，否则写入端会在记录失败原因之前被正常关闭
+            Writer writer = deadline.guard(limits.guardHtml(pipe.writer()));
+            ImageRegistry previous = ImageRegistry.bind(images);
+            long startedAt = recorder.isEnabled() ? System.nanoTime() : 0;
+            RenderPhaseEvent event = RenderPhaseEvent.start(template.getName(), RenderPhase.MERGE);
+            try {
+                template.merge(context, writer);
+                writer.close();
+                event.htmlChars = pipe.written();
+                event.finish();
+                if (recorder.isEnabled()) {
+                    // 在 join 之前写入，解析线程可见
+                    recorder.add(RenderPhase.MERGE, System.nanoTime() - startedAt);
+                }
+            } catch (Throwable e) {
+                pipe.fail(e);
+                throw new CompletionException(e);
+            } finally {
+                ImageRegistry.bind(previous);
+            }
+        }, mergeExecutor);
+        Document document;
+        try {
+            document = parse(template, pipe.reader());
+        } catch (RuntimeException e) {
+            // 合并失败导致的解析错误以合并的异常为准，解析失败导致的合并中断则以解析的异常为准
+            RuntimeException cause = mergeFailure(producer);
+            if (cause != null && pipe.isFailedBeforeReaderClosed()) {
+                cause.addSuppressed(e);
+                throw cause;
+            }
+            throw e;
+        } finally {
+            // 解析提前结束时让生产者尽快退出
+            pipe.closeReader();
+        }
+        RuntimeException cause = mergeFailure(producer);
+        if (cause != null) {
+            throw cause;
+        }
+        recorder.setHtmlChars(pipe.written());
+        return document;
+    }
+
+    private static RuntimeException mergeFailure(CompletableFuture<Void> producer) {
+        try {
+            producer.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() instanceof RuntimeException runtimeException
+                ? runtimeException
+                : e;
+        }
+    }
+
+    private static Document parse(Template template, Reader reader) {
+        RenderPhaseEvent event = RenderPhaseEvent.start(template.getName(), RenderPhase.PARSE);
+        Document document = XMLResource.load(new InputSource(reader)).getDocument();
+        event.finish();
+        return document;
+    }
+
+    /**
+     * 统计写入字节数的输出流
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * 可以直接读取内部缓冲区的 {@link CharArrayWriter}
+     */
+    private static class ExposedCharArrayWriter extends CharArrayWriter {
+
+        ExposedCharArrayWriter() {
+            super(8192);
+        }
+
+        Reader reader() {
+            return new CharArrayReader(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.metrics.RenderListener;
+import cc.ddrpa.motto.html.metrics.RenderMetrics;
+import cc.ddrpa.motto.html.metrics.RenderPhase;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 采集一份文档的渲染统计数据
+ * <p>
+ * 没有设置 {@link RenderListener} 时使用 {@link #DISABLED}，所有方法直接返回，不会读取时钟。
+ * 渲染期间采集器绑定在渲染线程上，供 {@link ResourcesUserAgent} 与 {@link RegistryFontResolver} 报告图片与字体的加载。
+ */
+class RenderRecorder {
+
+    static final RenderRecorder DISABLED = new RenderRecorder(null, false);
+
+    private static final ThreadLocal<RenderRecorder> current = new ThreadLocal<>();
+
+    private final String template;
+    private final boolean enabled;
+    private final long[] phaseNanos = new long[RenderPhase.values().length];
+    private final long startedAt;
+    private long lapStartedAt;
+    private long htmlChars;
+    private int pages;
+    private long outputBytes;
+    private int imageCacheHits;
+    private int imageCacheMisses;
+
+    private RenderRecorder(String template, boolean enabled) {
+        this.template = template;
+        this.enabled = enabled;
+        this.startedAt = enabled ? System.nanoTime() : 0;
+        this.lapStartedAt = startedAt;
+    }
+
+    /**
+     * 为使用给定监听器的渲染创建采集器
+     */
+    static RenderRecorder start(RenderListener listener, String template) {
+        return listener == RenderListener.NOOP ? DISABLED : new RenderRecorder(template, true);
+    }
+
+    /**
+     * 将采集器绑定到当前线程，{@link #DISABLED} 不会被绑定
+     *
+     * @return 之前绑定在当前线程上的采集器，用于恢复
+     */
+    static RenderRecorder bind(RenderRecorder recorder) {
+        RenderRecorder previous = current.get();
+        if (recorder == null || !recorder.enabled) {
+            current.remove();
+        } else {
+            current.set(recorder);
+        }
+        return previous;
+    }
+
+    /**
+     * 当前线程绑定的采集器
+     *
+     * @return 没有绑定或未启用时返回 null
+     */
+    static RenderRecorder current() {
+        return current.get();
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 将上一次计时以来的耗时计入给定阶段
+     */
+    void lap(RenderPhase phase) {
+        if (enabled) {
+            long now = System.nanoTime();
+            phaseNanos[phase.ordinal()] += now - lapStartedAt;
+            lapStartedAt = now;
+        }
+    }
+
+    /**
+     * 将在其他线程中测得的耗时计入给定阶段
+     */
+    void add(RenderPhase phase, long nanos) {
+        if (enabled) {
+            phaseNanos[phase.ordinal()] += nanos;
+        }
+    }
+
+    void imageLoaded(boolean cacheHit, long nanos) {
+        if (cacheHit) {
+            imageCacheHits++;
+        } else {
+            imageCacheMisses++;
+        }
+        add(RenderPhase.IMAGE_LOAD, nanos);
+    }
+
+    void setHtmlChars(long htmlChars) {
+        this.htmlChars = htmlChars;
+    }
+
+    void setPages(int pages) {
+        this.pages = pages;
+    }
+
+    void setOutputBytes(long outputBytes) {
+        this.outputBytes = outputBytes;
+    }
+
+    RenderMetrics toMetrics() {
+        Map<RenderPhase, Duration> phases = new EnumMap<>(RenderPhase.class);
+        for (RenderPhase phase : RenderPhase.values()) {
+            phases.put(phase, Duration.ofNanos(phaseNanos[phase.ordinal()]));
+        }
+        return new RenderMetrics(template, Duration.ofNanos(System.nanoTime() - startedAt), phases,
+            htmlChars, pages, outputBytes, imageCacheHits, imageCacheMisses);
+    }
+}
@@ -0,0 +1,245 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.cache.DataHasher;
+import cc.ddrpa.motto.html.cache.ResultStore;
+import cc.ddrpa.motto.html.cache.StableDataHasher;
+import cc.ddrpa.motto.html.metrics.RenderPhase;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.apache.velocity.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 渲染结果缓存
+ * <p>
+ * 以模版标识（来源、名称、修改时间与分辨率）加上模版数据的摘要为键保存生成的 PDF 文件，相同的输入直接返回之前的结果。
+ * 同时发起的相同请求只会渲染一次，其余请求等待并共享该次的结果。
+ * 通过 {@link DocumentBuilder#setResultCache(RenderResultCache)} 启用，可以在多个 DocumentBuilder
+ * 与 {@link DocumentRenderer} 间共享。
+ * <p>
+ * 模版中调用的方法如果依赖当前时间等数据以外的状态，缓存的结果不会随之变化。
+ */
+public class RenderResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderResultCache.class);
+    /**
+     * 等待相同的渲染时检查截止时间的间隔
+     */
+    private static final long WAIT_SLICE_MILLIS = 50;
+
+    private final ResultStore store;
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inflight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder uncacheable = new LongAdder();
+    private volatile DataHasher hasher = new StableDataHasher();
+    private volatile String namespace = "";
+
+    private RenderResultCache(ResultStore store) {
+        this.store = store;
+    }
+
+    /**
+     * 使用给定的存储创建缓存
+     *
+     * @param store 例如 {@link ResultStore#memory(long, java.time.Duration)}
+     * @return
+     */
+    public static RenderResultCache newInstance(ResultStore store) {
+        return new RenderResultCache(store);
+    }
+
+    /**
+     * 设置计算模版数据摘要的方法，默认为 {@link StableDataHasher}
+     *
+     * @param hasher
+     * @return
+     */
+    public RenderResultCache setHasher(DataHasher hasher) {
+        this.hasher = hasher;
+        return this;
+    }
+
+    /**
+     * 设置附加在缓存键之前的命名空间，例如应用的版本号
+     * <p>
+     * 使用文件系统存储时，模版来源的标识在进程重启后可能变化，模版内容发布新版本后也可能保持相同的名称与修改时间，
+     * 此时可以通过命名空间区分不同版本生成的结果
+     *
+     * @param namespace
+     * @return
+     */
+    public RenderResultCache setNamespace(String namespace) {
+        this.namespace = namespace == null ? "" : namespace;
+        return this;
+    }
+
+    /**
+     * 清空所有缓存的结果
+     */
+    public void invalidateAll() {
+        store.invalidateAll();
+    }
+
+    /**
+     * 获取缓存的统计数据
+     *
+     * @return snapshot of {@link Stats}
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), shared.sum(), uncacheable.sum());
+    }
+
+    /**
+     * 查找缓存的结果写到输出流，不存在时调用 {@code render} 渲染
+     *
+     * @param templateId   模版来源与名称组成的标识
+     * @param template     用于读取模版的修改时间
+     * @param dotsPerPoint
+     * @param dotsPerPixel
+     * @param limits       本次渲染的资源上限，不同上限的渲染不共享结果，输出缓存的结果时同样检查输出的字节数
+     * @param deadline     本次渲染的截止时间，等待相同的渲染时同样生效
+     * @param data         模版数据
+     * @param outputStream
+     * @param render       将文档渲染到给定输出流的方法
+     */
+    void render(String templateId, Template template, float dotsPerPoint, int dotsPerPixel,
+        RenderLimits limits, RenderDeadline deadline, Map<String, Object> data,
+        OutputStream outputStream, Consumer<OutputStream> render) {
+        // 自己渲染时也使用同一个截止时间
+        RenderDeadline previous = RenderDeadline.bind(deadline);
+        try {
+            String dataHash = hasher.hash(data);
+            if (dataHash == null) {
+                uncacheable.increment();
+                render.accept(outputStream);
+                return;
+            }
+            // 结果是在相同的上限下生成的，页数等排版后才能检查的上限随之满足
+            String key = key(templateId + "@" + template.getLastModified() + "/" + dotsPerPoint + "x"
+                + dotsPerPixel + "/" + limits + "/" + dataHash);
+            byte[] document = store.get(key);
+            if (document != null) {
+                hits.increment();
+            } else {
+                document = renderOnce(key, deadline, render);
+            }
+            try {
+                limits.guardOutput(outputStream).write(document);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } finally {
+            RenderDeadline.bind(previous);
+        }
+    }
+
+    private byte[] renderOnce(String key, RenderDeadline deadline,
+        Consumer<OutputStream> render) {
+        CompletableFuture<byte[]> pending = new CompletableFuture<>();
+        CompletableFuture<byte[]> leader;
+        while ((leader = inflight.putIfAbsent(key, pending)) != null) {
+            try {
+                byte[] document = await(leader, deadline);
+                shared.increment();
+                return document;
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof RenderCancelledException)) {
+                    // 相同的输入会以相同的方式失败，直接报告渲染的错误
+                    throw rethrow(e.getCause());
+                }
+                // 超时或取消只与发起渲染的请求有关，由其中一个等待的请求重新渲染
+                logger.debug("Shared render of {} was cancelled, render again", key);
+                inflight.remove(key, leader);
+            }
+        }
+        try {
+            byte[] document = store.get(key);
+            if (document != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                document = renderTo(render);
+                store.put(key, document);
+            }
+            pending.complete(document);
+            return document;
+        } catch (RuntimeException | Error e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, pending);
+        }
+    }
+
+    /**
+     * 等待同时进行的相同渲染，超时或被取消时与自己渲染一样抛出异常
+     */
+    private static byte[] await(CompletableFuture<byte[]> leader, RenderDeadline deadline)
+        throws ExecutionException {
+        while (true) {
+            deadline.check();
+            try {
+                return leader.get(WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // 继续等待
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RenderCancelledException("Interrupted while waiting for shared render",
+                    RenderPhase.MERGE);
+            }
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return (RuntimeException) cause;
+    }
+
+    private static byte[] renderTo(Consumer<OutputStream> render) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        render.accept(buffer);
+        return buffer.toByteArray();
+    }
+
+    private String key(String identity) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return HexFormat.of().formatHex(
+            digest.digest((namespace + "/" + identity).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 渲染结果缓存的统计数据快照
+     *
+     * @param hits        从存储中直接返回结果的次数
+     * @param misses      实际渲染的次数
+     * @param shared      等待同时进行的相同渲染并共享其结果的次数
+     * @param uncacheable 因数据无法计算摘要而未使用缓存的次数
+     */
+    public record Stats(long hits, long misses, long shared, long uncacheable) {
+
+    }
+}
@@ -0,0 +1,59 @@
+package cc.ddrpa.motto.html;
+
+import java.util.function.Function;
+import org.xhtmlrenderer.pdf.ITextFontResolver;
+import org.xhtmlrenderer.pdf.ITextOutputDevice;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.ITextReplacedElementFactory;
+import org.xhtmlrenderer.pdf.ITextUserAgent;
+
+/**
+ * 一次渲染所需的可变状态，同一时刻只会被一个线程持有
+ */
+class RenderSlot {
+
+    private final float dotsPerPoint;
+    private final int dotsPerPixel;
+    private final ITextOutputDevice outputDevice;
+    private final ITextUserAgent userAgent;
+    private ITextFontResolver fontResolver;
+    private int fontGeneration;
+
+    RenderSlot(float dotsPerPoint, int dotsPerPixel,
+        Function<ITextOutputDevice, ITextUserAgent> userAgentFactory) {
+        this(dotsPerPoint, dotsPerPixel, new ITextOutputDevice(dotsPerPoint), userAgentFactory);
+    }
+
+    RenderSlot(float dotsPerPoint, int dotsPerPixel, ITextOutputDevice outputDevice,
+        ITextUserAgent userAgent) {
+        this(dotsPerPoint, dotsPerPixel, outputDevice, device -> userAgent);
+    }
+
+    private RenderSlot(float dotsPerPoint, int dotsPerPixel, ITextOutputDevice outputDevice,
+        Function<ITextOutputDevice, ITextUserAgent> userAgentFactory) {
+        this.dotsPerPoint = dotsPerPoint;
+        this.dotsPerPixel = dotsPerPixel;
+        this.outputDevice = outputDevice;
+        this.userAgent = userAgentFactory.apply(outputDevice);
+        this.fontGeneration = DocumentBuilder.fontRegistry().generation();
+        this.fontResolver = DocumentBuilder.fontRegistry().newResolver();
+    }
+
+    /**
+     * 创建绑定到当前槽位的 {@link ITextRenderer}，如果在此期间注册了新的字体或逐出了字体，会先重建字体解析器
+     *
+     * @return instance of {@link ITextRenderer}
+     */
+    ITextRenderer newRenderer() {
+        FontRegistry fontRegistry = DocumentBuilder.fontRegistry();
+        fontRegistry.evictIfDue();
+        int generation = fontRegistry.generation();
+        if (generation != fontGeneration) {
+            fontResolver = fontRegistry.newResolver();
+            fontGeneration = generation;
+        }
+        return new ITextRenderer(dotsPerPoint, dotsPerPixel, outputDevice, userAgent,
+            fontResolver, new ITextReplacedElementFactory(outputDevice),
+            new CancellableTextRenderer());
+    }
+}
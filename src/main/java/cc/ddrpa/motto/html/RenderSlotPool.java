@@ -0,0 +1,50 @@
+package cc.ddrpa.motto.html;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 无锁的 {@link RenderSlot} 对象池
+ * <p>
+ * 池中没有空闲槽位时直接创建新的槽位，归还时超出上限的槽位会被丢弃，因此并发数不受池大小限制
+ */
+class RenderSlotPool {
+
+    private final Queue<RenderSlot> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final Supplier<RenderSlot> factory;
+    private final int maxIdle;
+
+    RenderSlotPool(Supplier<RenderSlot> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    RenderSlot borrow() {
+        RenderSlot slot = idle.poll();
+        if (slot == null) {
+            return factory.get();
+        }
+        idleCount.decrementAndGet();
+        return slot;
+    }
+
+    /**
+     * 归还槽位，渲染失败的槽位可能处于不一致的状态，不应归还
+     *
+     * @param slot
+     */
+    void release(RenderSlot slot) {
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        idle.offer(slot);
+    }
+
+    int idleSize() {
+        return idleCount.get();
+    }
+}
@@ -0,0 +1,28 @@
+package cc.ddrpa.motto.html;
+
+import cc.ddrpa.motto.html.metrics.RenderPhase;
+import java.time.Duration;
+
+/**
+ * 渲染超过了通过 {@link DocumentBuilder#setRenderTimeout(Duration)} 设置的时限
+ */
+public class RenderTimeoutException extends RenderCancelledException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Duration timeout;
+
+    RenderTimeoutException(Duration timeout, RenderPhase phase) {
+        super("Render exceeded " + timeout.toMillis() + " ms", phase);
+        this.timeout = timeout;
+    }
+
+    /**
+     * 超过的时限
+     *
+     * @return render timeout
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+}
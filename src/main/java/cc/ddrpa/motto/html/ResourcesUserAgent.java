@@ -2,45 +2,275 @@ package cc.ddrpa.motto.html;
 
 import static org.xhtmlrenderer.util.IOUtil.readBytes;
 
+import cc.ddrpa.motto.html.cache.CacheStats;
+import cc.ddrpa.motto.html.cache.LruCache;
+import cc.ddrpa.motto.html.embedded.EmbeddedImage;
+import cc.ddrpa.motto.html.embedded.ImageRegistry;
+import cc.ddrpa.motto.html.metrics.RenderPhase;
 import com.lowagie.text.Image;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import org.xhtmlrenderer.pdf.ITextFSImage;
 import org.xhtmlrenderer.pdf.ITextOutputDevice;
 import org.xhtmlrenderer.pdf.ITextUserAgent;
+import org.xhtmlrenderer.pdf.PDFAsImage;
 import org.xhtmlrenderer.resource.ImageResource;
 import org.xhtmlrenderer.util.ContentTypeDetectingInputStreamWrapper;
+import org.xhtmlrenderer.util.ImageUtil;
 import org.xhtmlrenderer.util.XRLog;
 
 public class ResourcesUserAgent extends ITextUserAgent {
 
+    public static final long DEFAULT_IMAGE_CACHE_BYTES = 64L * 1024 * 1024;
+
     private static final String RESOURCES_PREFIX = "resources://";
     private static final int RESOURCES_PREFIX_LENGTH = RESOURCES_PREFIX.length();
 
+    private static final long FAILURE_RETRY_NANOS = Duration.ofSeconds(10).toNanos();
+    private static final long FAILURE_WEIGHT = 64;
+
+    private static volatile LruCache<String, CachedImage> imageCache = newImageCache(
+        DEFAULT_IMAGE_CACHE_BYTES);
+
+    private final ITextOutputDevice outputDevice;
     private final int dotsPerPixel;
 
     public ResourcesUserAgent(ITextOutputDevice outputDevice, int dotsPerPixel) {
         super(outputDevice, dotsPerPixel);
+        this.outputDevice = outputDevice;
         this.dotsPerPixel = dotsPerPixel;
     }
 
+    /**
+     * 共享缓存中的一项，是解码后的图片、PDF 文件的内容或者一次失败的读取
+     *
+     * @param image     解码后的图片
+     * @param pdf       PDF 文件的内容
+     * @param failedAt  读取失败的时间，失败的读取在 {@link #FAILURE_RETRY_NANOS} 后才会重试
+     */
+    private record CachedImage(Image image, byte[] pdf, long failedAt) {
+
+        static CachedImage failed() {
+            return new CachedImage(null, null, System.nanoTime());
+        }
+
+        boolean shouldRetry() {
+            return image == null && pdf == null
+                && System.nanoTime() - failedAt >= FAILURE_RETRY_NANOS;
+        }
+    }
+
+    /**
+     * 加载图片
+     * <p>
+     * 解码后的图片以 URI 与 dotsPerPixel 为键缓存在所有实例共享的缓存中，多次渲染同一张图片时只会读取和解码一次。
+     * 除了 {@code resources://} 前缀的图片外，也包括 http(s) 与 file 协议的图片，因此图片内容在缓存期间被修改时不会被察觉。
+     * PDF 文件缓存其内容，读取失败的 URI 在一段时间内不会被重试。
+     * Base64 编码的图片交给 {@link ITextUserAgent} 处理。{@link ImageRegistry} 中的图片直接使用已解码的数据。
+     *
+     * @param uriStr 图片的 URI
+     * @return image resource
+     */
     @Override
     public ImageResource getImageResource(String uriStr) {
-        if (!uriStr.startsWith(RESOURCES_PREFIX)) {
+        if (uriStr.startsWith(ImageRegistry.URI_PREFIX)) {
+            return getRegisteredImageResource(uriStr);
+        }
+        if (ImageUtil.isEmbeddedBase64Image(uriStr)) {
             return super.getImageResource(uriStr);
         }
-        String filePath = uriStr.substring(RESOURCES_PREFIX_LENGTH);
-        try (InputStream is = this.getClass().getClassLoader().getResourceAsStream(filePath);
-            ContentTypeDetectingInputStreamWrapper cis = new ContentTypeDetectingInputStreamWrapper(
-                is)) {
-            Image image = Image.getInstance(readBytes(cis));
-            scaleToOutputResolution(image);
-            return new ImageResource(uriStr, new ITextFSImage(image));
-        } catch (IOException e) {
-            XRLog.exception(
-                "Can't read image file; unexpected problem for URI '" + uriStr + "'", e);
+        String resolved = uriStr.startsWith(RESOURCES_PREFIX) ? uriStr : resolveURI(uriStr);
+        if (resolved == null) {
+            return super.getImageResource(uriStr);
+        }
+        RenderRecorder recorder = RenderRecorder.current();
+        long startedAt = recorder == null ? 0 : System.nanoTime();
+        ImageFetchEvent event = new ImageFetchEvent();
+        event.begin();
+        String key = cacheKey(resolved);
+        boolean[] loaded = new boolean[1];
+        CachedImage cached = imageCache.computeIfAbsent(key, ignored -> {
+            loaded[0] = true;
+            return loadImage(resolved);
+        });
+        if (cached.shouldRetry()) {
+            loaded[0] = true;
+            cached = loadImage(resolved);
+            imageCache.put(key, cached);
+        }
+        Image image = cached.image();
+        if (recorder != null) {
+            recorder.imageLoaded(!loaded[0], System.nanoTime() - startedAt);
+        }
+        commit(event, resolved, !loaded[0], image);
+        if (cached.pdf() != null) {
+            return getPdfImageResource(resolved);
+        }
+        if (image == null) {
+            // 读取失败时已经记录了错误
             return new ImageResource(uriStr, null);
         }
+        // 缓存中的图片可能是在没有上限或上限更大的渲染中加载的
+        RenderLimits.current().checkImage(resolved, (long) image.getWidth(),
+            (long) image.getHeight());
+        // 排版时会修改图片的尺寸，每次使用共享原始数据的副本
+        return new ImageResource(resolved, new ITextFSImage(Image.getInstance(image)));
+    }
+
+    /**
+     * 与 {@link ITextUserAgent} 相同地将 PDF 的第一页作为图片，输出设备通过 {@link #getBinaryResource(String)}
+     * 读取缓存的文件内容
+     */
+    private ImageResource getPdfImageResource(String uri) {
+        try {
+            URI source = new URI(uri);
+            PdfReader reader = outputDevice.getReader(source);
+            PDFAsImage image = new PDFAsImage(source);
+            Rectangle rect = reader.getPageSizeWithRotation(1);
+            image.setInitialWidth(rect.getWidth() * outputDevice.getDotsPerPoint());
+            image.setInitialHeight(rect.getHeight() * outputDevice.getDotsPerPoint());
+            return new ImageResource(uri, image);
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            XRLog.exception("Can't read PDF file; unexpected problem for URI '" + uri + "'", e);
+            return new ImageResource(uri, null);
+        }
+    }
+
+    /**
+     * 读取二进制资源，作为图片使用的 PDF 文件直接返回缓存的内容
+     *
+     * @param uri 资源的 URI
+     * @return 资源的内容，无法读取时返回 null
+     */
+    @Override
+    public byte[] getBinaryResource(String uri) {
+        CachedImage cached = imageCache.peek(cacheKey(uri));
+        if (cached != null && cached.pdf() != null) {
+            return cached.pdf();
+        }
+        if (uri.startsWith(RESOURCES_PREFIX)) {
+            try (InputStream is = openImageStream(uri)) {
+                return is == null ? null : readBytes(is);
+            } catch (IOException e) {
+                XRLog.exception("Can't read resource for URI '" + uri + "'", e);
+                return null;
+            }
+        }
+        return super.getBinaryResource(uri);
+    }
+
+    private String cacheKey(String uri) {
+        return dotsPerPixel + ":" + uri;
+    }
+
+    private ImageResource getRegisteredImageResource(String uri) {
+        ImageRegistry registry = ImageRegistry.current();
+        EmbeddedImage embeddedImage = registry == null ? null : registry.resolve(uri);
+        if (embeddedImage == null) {
+            XRLog.exception("Can't find embedded image for URI '" + uri + "'");
+            return new ImageResource(uri, null);
+        }
+        // 解码之前按图像的尺寸检查
+        RenderLimits.current().checkImage(uri, embeddedImage.getWidth(),
+            embeddedImage.getHeight());
+        RenderRecorder recorder = RenderRecorder.current();
+        long startedAt = recorder == null ? 0 : System.nanoTime();
+        ImageFetchEvent event = new ImageFetchEvent();
+        event.begin();
+        try {
+            Image image = Image.getInstance(embeddedImage.toPdfImage());
+            scaleToOutputResolution(image);
+            if (recorder != null) {
+                recorder.add(RenderPhase.IMAGE_LOAD, System.nanoTime() - startedAt);
+            }
+            commit(event, uri, true, image);
+            return new ImageResource(uri, new ITextFSImage(image));
+        } catch (IOException | RuntimeException e) {
+            commit(event, uri, false, null);
+            XRLog.exception("Can't convert embedded image for URI '" + uri + "'", e);
+            return new ImageResource(uri, null);
+        }
+    }
+
+    private static void commit(ImageFetchEvent event, String uri, boolean cacheHit, Image image) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.uri = uri;
+            event.cacheHit = cacheHit && image != null;
+            event.failed = image == null;
+            if (image != null) {
+                event.width = image.getPlainWidth();
+                event.height = image.getPlainHeight();
+            }
+            event.commit();
+        }
+    }
+
+    private CachedImage loadImage(String uri) {
+        try (InputStream is = openImageStream(uri)) {
+            if (is == null) {
+                return CachedImage.failed();
+            }
+            try (ContentTypeDetectingInputStreamWrapper cis =
+                new ContentTypeDetectingInputStreamWrapper(is)) {
+                byte[] bytes = readBytes(cis);
+                if (cis.isPdf()) {
+                    return new CachedImage(null, bytes, 0);
+                }
+                checkImageSize(uri, bytes);
+                Image image = Image.getInstance(bytes);
+                scaleToOutputResolution(image);
+                return new CachedImage(image, null, 0);
+            }
+        } catch (RenderLimitExceededException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            XRLog.exception("Can't read image file; unexpected problem for URI '" + uri + "'", e);
+            return CachedImage.failed();
+        }
+    }
+
+    /**
+     * 设置了像素数上限时，在解码之前只读取文件头获得图片的尺寸
+     */
+    private static void checkImageSize(String uri, byte[] bytes) throws IOException {
+        RenderLimits limits = RenderLimits.current();
+        if (limits.maxImagePixels() == 0) {
+            return;
+        }
+        try (ImageInputStream iis = ImageIO.createImageInputStream(
+            new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                // 交给 OpenPDF 解析，解码后再检查
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                limits.checkImage(uri, reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private InputStream openImageStream(String uri) {
+        if (uri.startsWith(RESOURCES_PREFIX)) {
+            return this.getClass().getClassLoader()
+                .getResourceAsStream(uri.substring(RESOURCES_PREFIX_LENGTH));
+        }
+        return resolveAndOpenStream(uri);
     }
 
     private void scaleToOutputResolution(Image image) {
@@ -49,4 +279,38 @@ public class ResourcesUserAgent extends ITextUserAgent {
             image.scaleAbsolute(image.getPlainWidth() * factor, image.getPlainHeight() * factor);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 设置共享图片缓存的容量，会清空已缓存的图片
+     *
+     * @param maxBytes 缓存图片数据的总字节数上限，为 0 时不缓存
+     */
+    public static void setImageCacheSize(long maxBytes) {
+        imageCache = newImageCache(maxBytes);
+    }
+
+    /**
+     * 获取共享图片缓存的统计数据
+     *
+     * @return snapshot of {@link CacheStats}
+     */
+    public static CacheStats imageCacheStats() {
+        return imageCache.stats();
+    }
+
+    private static LruCache<String, CachedImage> newImageCache(long maxBytes) {
+        return new LruCache<>(maxBytes, cached -> {
+            if (cached.pdf() != null) {
+                return cached.pdf().length;
+            }
+            Image image = cached.image();
+            if (image == null) {
+                return FAILURE_WEIGHT;
+            }
+            byte[] rawData = image.getRawData();
+            return rawData != null
+                ? rawData.length
+                : (long) image.getWidth() * (long) image.getHeight() * 4;
+        });
+    }
+}
@@ -0,0 +1,160 @@
+package cc.ddrpa.motto.html;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.velocity.Template;
+import org.apache.velocity.exception.ParseErrorException;
+import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
+import org.apache.velocity.runtime.resource.loader.FileResourceLoader;
+import org.apache.velocity.runtime.resource.loader.ResourceLoader;
+
+/**
+ * 模版的来源，每个来源持有一个独立的 Velocity 运行时
+ * <p>
+ * 通过名称加载的模版由 Velocity 的资源缓存保存，只有距离上次检查超过指定的间隔时才会检查来源是否被修改，
+ * 因此频繁使用的模版不会在每次请求时访问磁盘，修改后的模版也会在间隔内生效。
+ */
+public class TemplateSource {
+
+    /**
+     * 默认的修改检查间隔（秒）
+     */
+    public static final long DEFAULT_MODIFICATION_CHECK_INTERVAL = 2;
+
+    private static final String LOADER_NAME = "motto";
+    private static final AtomicInteger idCounter = new AtomicInteger();
+    private static final TemplateSource CLASSPATH = new TemplateSource(
+        ClasspathResourceLoader.class, null, null, 0);
+
+    private final int id = idCounter.incrementAndGet();
+    private final RuntimeInstance runtimeInstance = new RuntimeInstance();
+
+    private TemplateSource(Class<? extends ResourceLoader> loaderClass,
+        ResourceLoader loaderInstance,
+        String path,
+        long modificationCheckInterval) {
+        String prefix = RuntimeConstants.RESOURCE_LOADER + "." + LOADER_NAME + ".";
+        runtimeInstance.setProperty(RuntimeConstants.RESOURCE_LOADERS, LOADER_NAME);
+        if (loaderInstance != null) {
+            runtimeInstance.setProperty(prefix + RuntimeConstants.RESOURCE_LOADER_INSTANCE,
+                loaderInstance);
+        } else {
+            runtimeInstance.setProperty(prefix + RuntimeConstants.RESOURCE_LOADER_CLASS,
+                loaderClass.getName());
+        }
+        if (path != null) {
+            runtimeInstance.setProperty(prefix + RuntimeConstants.RESOURCE_LOADER_PATHS, path);
+        }
+        runtimeInstance.setProperty(prefix + RuntimeConstants.RESOURCE_LOADER_CACHE, true);
+        runtimeInstance.setProperty(prefix + RuntimeConstants.RESOURCE_LOADER_CHECK_INTERVAL,
+            modificationCheckInterval);
+        runtimeInstance.init();
+    }
+
+    /**
+     * 从 classpath 加载模版，classpath 中的资源不会变化，因此加载后一直缓存
+     *
+     * @return 共享的 classpath 模版来源
+     */
+    public static TemplateSource classpath() {
+        return CLASSPATH;
+    }
+
+    /**
+     * 从文件系统的目录加载模版，模版名称是相对于该目录的路径
+     *
+     * @param directory 模版所在的目录
+     * @return instance of {@link TemplateSource}
+     */
+    public static TemplateSource directory(Path directory) {
+        return directory(directory, DEFAULT_MODIFICATION_CHECK_INTERVAL);
+    }
+
+    /**
+     * 从文件系统的目录加载模版，模版名称是相对于该目录的路径
+     *
+     * @param directory                 模版所在的目录
+     * @param modificationCheckInterval 检查文件是否被修改的间隔（秒），小于等于 0 时不检查
+     * @return instance of {@link TemplateSource}
+     */
+    public static TemplateSource directory(Path directory, long modificationCheckInterval) {
+        return new TemplateSource(FileResourceLoader.class, null,
+            directory.toAbsolutePath().toString(), modificationCheckInterval);
+    }
+
+    /**
+     * 从内存中的 {@link Map} 加载模版，键为模版名称，值为模版内容
+     * <p>
+     * Map 会被直接引用而不是复制，修改其中的内容会在检查间隔后生效，请使用线程安全的 Map 实现
+     *
+     * @param templates 模版名称到模版内容的映射
+     * @return instance of {@link TemplateSource}
+     */
+    public static TemplateSource inMemory(Map<String, String> templates) {
+        return inMemory(templates, DEFAULT_MODIFICATION_CHECK_INTERVAL);
+    }
+
+    /**
+     * 从内存中的 {@link Map} 加载模版，键为模版名称，值为模版内容
+     *
+     * @param templates                 模版名称到模版内容的映射
+     * @param modificationCheckInterval 检查内容是否被修改的间隔（秒），小于等于 0 时不检查
+     * @return instance of {@link TemplateSource}
+     */
+    public static TemplateSource inMemory(Map<String, String> templates,
+        long modificationCheckInterval) {
+        return new TemplateSource(null, new MapResourceLoader(templates), null,
+            modificationCheckInterval);
+    }
+
+    /**
+     * 使用自定义的 Velocity {@link ResourceLoader} 加载模版，例如从数据库或对象存储中读取
+     * <p>
+     * 资源加载器需要正确实现 {@link ResourceLoader#isSourceModified} 与
+     * {@link ResourceLoader#getLastModified}，才能在检查间隔后加载修改后的模版
+     *
+     * @param resourceLoader            资源加载器
+     * @param modificationCheckInterval 检查模版是否被修改的间隔（秒），小于等于 0 时不检查
+     * @return instance of {@link TemplateSource}
+     */
+    public static TemplateSource custom(ResourceLoader resourceLoader,
+        long modificationCheckInterval) {
+        return new TemplateSource(null, resourceLoader, null, modificationCheckInterval);
+    }
+
+    /**
+     * 按名称加载模版
+     *
+     * @param name 模版名称
+     * @return 编译后的模版
+     * @throws ResourceNotFoundException
+     * @throws ParseErrorException
+     */
+    public Template getTemplate(String name)
+        throws ResourceNotFoundException, ParseErrorException {
+        return runtimeInstance.getTemplate(name);
+    }
+
+    /**
+     * 解析模版字符串时使用的运行时
+     *
+     * @return runtime services of this source
+     */
+    RuntimeServices runtimeServices() {
+        return runtimeInstance;
+    }
+
+    /**
+     * 用于区分不同来源解析的模版
+     *
+     * @return unique id of this source
+     */
+    int id() {
+        return id;
+    }
+}
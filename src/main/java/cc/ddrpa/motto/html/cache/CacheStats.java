@@ -0,0 +1,23 @@
+package cc.ddrpa.motto.html.cache;
+
+/**
+ * 缓存的统计数据快照
+ *
+ * @param hits      命中次数
+ * @param misses    未命中次数
+ * @param evictions 因容量不足被淘汰的条目数
+ * @param size      当前条目数
+ * @param weight    当前条目的总权重
+ */
+public record CacheStats(long hits, long misses, long evictions, long size, long weight) {
+
+    /**
+     * 命中率，没有请求时为 0
+     *
+     * @return hit rate between 0 and 1
+     */
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
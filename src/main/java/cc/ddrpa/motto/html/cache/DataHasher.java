@@ -0,0 +1,22 @@
+package cc.ddrpa.motto.html.cache;
+
+import java.util.Map;
+
+/**
+ * 计算模版数据摘要的方法，用于渲染结果缓存的键
+ * <p>
+ * 相同的数据必须得到相同的摘要，不同的数据应当得到不同的摘要，且不能依赖对象的内存地址或 {@code hashCode()}。
+ *
+ * @see StableDataHasher
+ */
+@FunctionalInterface
+public interface DataHasher {
+
+    /**
+     * 计算模版数据的摘要
+     *
+     * @param data 合并到模版中的数据
+     * @return 摘要，数据中包含无法稳定计算摘要的对象时返回 null，此时不使用缓存
+     */
+    String hash(Map<String, Object> data);
+}
@@ -0,0 +1,179 @@
+package cc.ddrpa.motto.html.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于文件系统目录的存储，每个结果保存为一个文件
+ * <p>
+ * 文件的修改时间即写入时间，用于判断是否过期；使用顺序只记录在内存中，启动时按修改时间恢复
+ */
+class DiskResultStore implements ResultStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskResultStore.class);
+    private static final String SUFFIX = ".pdf";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long ttlMillis;
+    // 按访问顺序排列的文件大小
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    DiskResultStore(Path directory, long maxBytes, Duration ttl) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttl == null ? 0 : ttl.toMillis();
+        try {
+            Files.createDirectories(directory);
+            // 上次运行中途退出时留下的临时文件
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(file -> file.getFileName().toString().endsWith(TEMP_SUFFIX))
+                    .forEach(DiskResultStore::deleteQuietly);
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparing(DiskResultStore::lastModified))
+                    .forEach(file -> {
+                        String name = file.getFileName().toString();
+                        long size = size(file);
+                        entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                        bytes += size;
+                    });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        evict();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        Path file = directory.resolve(key + SUFFIX);
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+            if (ttlMillis > 0
+                && System.currentTimeMillis() - lastModified(file).toMillis() > ttlMillis) {
+                remove(key);
+                return null;
+            }
+        }
+        try {
+            return Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            synchronized (this) {
+                forget(key);
+            }
+            return null;
+        } catch (IOException e) {
+            logger.warn("Failed to read cached document {} because {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] document) {
+        if (document.length > maxBytes) {
+            return;
+        }
+        Path file = directory.resolve(key + SUFFIX);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+            Files.write(temp, document);
+            synchronized (this) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                temp = null;
+                forget(key);
+                entries.put(key, (long) document.length);
+                bytes += document.length;
+                evict();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write cached document {} because {}", file, e.getMessage());
+        } finally {
+            if (temp != null) {
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        for (String key : entries.keySet().toArray(String[]::new)) {
+            remove(key);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            bytes -= eldest.getValue();
+            delete(eldest.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        forget(key);
+        delete(key);
+    }
+
+    private void forget(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            bytes -= size;
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(directory.resolve(key + SUFFIX));
+        } catch (IOException e) {
+            logger.warn("Failed to delete cached document {} because {}", key, e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete temporary file {} because {}", file, e.getMessage());
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).lastModifiedTime();
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
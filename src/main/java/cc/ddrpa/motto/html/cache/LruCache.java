@@ -0,0 +1,186 @@
+package cc.ddrpa.motto.html.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * 线程安全、按权重限制容量的 LRU 缓存
+ * <p>
+ * 默认每个条目的权重为 1，即按条目数量限制容量；也可以指定按字节数等方式计算权重。
+ * 权重超过上限的单个条目不会被缓存。
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public class LruCache<K, V> {
+
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long weight;
+
+    /**
+     * 按条目数量限制容量
+     *
+     * @param maxSize 最多缓存的条目数，为 0 时不缓存
+     */
+    public LruCache(long maxSize) {
+        this(maxSize, value -> 1);
+    }
+
+    /**
+     * 按权重限制容量
+     *
+     * @param maxWeight 所有条目的总权重上限，为 0 时不缓存
+     * @param weigher   计算条目权重的方法
+     */
+    public LruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * 查找缓存的值
+     *
+     * @param key
+     * @return 缓存的值，不存在时返回 null
+     */
+    public V get(K key) {
+        V value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * 查找缓存的值，不计入命中统计
+     *
+     * @param key
+     * @return 缓存的值，不存在时返回 null
+     */
+    public V peek(K key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    /**
+     * 查找缓存的值，不存在时计算并放入缓存
+     * <p>
+     * 计算过程不持有锁，多个线程可能同时计算同一个 key，此时以先放入缓存的值为准
+     *
+     * @param key
+     * @param loader 计算值的方法，返回 null 时不缓存
+     * @return 缓存的值或新计算的值
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        V loaded = loader.apply(key);
+        if (loaded == null) {
+            return null;
+        }
+        return putIfAbsent(key, loaded);
+    }
+
+    /**
+     * 放入缓存，替换已有的值
+     *
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            return;
+        }
+        synchronized (entries) {
+            V previous = entries.put(key, value);
+            if (previous != null) {
+                weight -= weigher.applyAsLong(previous);
+            }
+            weight += valueWeight;
+            evict();
+        }
+    }
+
+    private V putIfAbsent(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            return value;
+        }
+        synchronized (entries) {
+            V existing = entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            entries.put(key, value);
+            weight += valueWeight;
+            evict();
+        }
+        return value;
+    }
+
+    /**
+     * 移除缓存的值
+     *
+     * @param key
+     * @return 被移除的值，不存在时返回 null
+     */
+    public V invalidate(K key) {
+        synchronized (entries) {
+            V removed = entries.remove(key);
+            if (removed != null) {
+                weight -= weigher.applyAsLong(removed);
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * 清空缓存，统计数据不会被重置
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    /**
+     * 获取统计数据
+     *
+     * @return snapshot of {@link CacheStats}
+     */
+    public CacheStats stats() {
+        synchronized (entries) {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(),
+                weight);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Map.Entry<K, V> eldest = iterator.next();
+            weight -= weigher.applyAsLong(eldest.getValue());
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+}
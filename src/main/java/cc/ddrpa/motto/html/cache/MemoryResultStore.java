@@ -0,0 +1,44 @@
+package cc.ddrpa.motto.html.cache;
+
+import java.time.Duration;
+
+/**
+ * 基于 {@link LruCache} 的内存存储，过期的结果在下次读取时移除
+ */
+class MemoryResultStore implements ResultStore {
+
+    private final LruCache<String, Entry> cache;
+    private final long ttlNanos;
+
+    MemoryResultStore(long maxBytes, Duration ttl) {
+        this.cache = new LruCache<>(maxBytes, entry -> entry.document().length);
+        this.ttlNanos = ttl == null ? 0 : ttl.toNanos();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (ttlNanos > 0 && System.nanoTime() - entry.createdAt() > ttlNanos) {
+            cache.invalidate(key);
+            return null;
+        }
+        return entry.document();
+    }
+
+    @Override
+    public void put(String key, byte[] document) {
+        cache.put(key, new Entry(document, System.nanoTime()));
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private record Entry(byte[] document, long createdAt) {
+
+    }
+}
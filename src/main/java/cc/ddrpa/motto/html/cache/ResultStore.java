@@ -0,0 +1,58 @@
+package cc.ddrpa.motto.html.cache;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 渲染结果的存储
+ * <p>
+ * 实现需要是线程安全的。存储可以在任意时刻丢弃条目，{@link #get(String)} 返回 null 时会重新渲染。
+ */
+public interface ResultStore {
+
+    /**
+     * 查找渲染结果
+     *
+     * @param key 由模版标识与数据摘要组成的十六进制字符串
+     * @return 渲染结果，不存在或已过期时返回 null
+     */
+    byte[] get(String key);
+
+    /**
+     * 保存渲染结果
+     *
+     * @param key
+     * @param document 渲染得到的 PDF 文件，调用方不会再修改
+     */
+    void put(String key, byte[] document);
+
+    /**
+     * 清空所有渲染结果
+     */
+    void invalidateAll();
+
+    /**
+     * 保存在内存中，按字节数限制容量，超出时淘汰最久未使用的结果
+     *
+     * @param maxBytes 所有结果的总字节数上限
+     * @param ttl      结果的有效期，为 null 时不会过期
+     * @return
+     */
+    static ResultStore memory(long maxBytes, Duration ttl) {
+        return new MemoryResultStore(maxBytes, ttl);
+    }
+
+    /**
+     * 保存在文件系统目录中，按字节数限制容量，超出时淘汰最久未使用的结果
+     * <p>
+     * 目录中已有的结果会被继续使用，多个进程不应共用同一个目录
+     *
+     * @param directory 保存结果的目录，不存在时会被创建
+     * @param maxBytes  所有结果的总字节数上限
+     * @param ttl       结果的有效期，为 null 时不会过期
+     * @return
+     */
+    static ResultStore disk(Path directory, long maxBytes, Duration ttl) {
+        return new DiskResultStore(directory, maxBytes, ttl);
+    }
+}
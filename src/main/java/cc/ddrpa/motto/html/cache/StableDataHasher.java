@@ -0,0 +1,202 @@
+package cc.ddrpa.motto.html.cache;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按数据的结构计算 SHA-256 摘要
+ * <p>
+ * 支持字符串、数字、布尔值、字符、枚举、日期时间、{@link UUID}、{@link Map}（与键的顺序无关）、
+ * {@link Set}（与元素的顺序无关）、{@link Collection}、数组以及由这些类型组成的 record。
+ * 其他类型需要通过 {@link #register(Class, Function)} 转换为上述类型，否则该次渲染不使用缓存。
+ * 其他的 {@link Iterable} 与 {@link Iterator} 可能只能遍历一次，计算摘要会使模版读不到数据，因此同样不使用缓存。
+ */
+public class StableDataHasher implements DataHasher {
+
+    private static final Logger logger = LoggerFactory.getLogger(StableDataHasher.class);
+    private static final int MAX_DEPTH = 64;
+
+    private final Map<Class<?>, Function<Object, Object>> canonicalizers = new LinkedHashMap<>();
+
+    /**
+     * 注册自定义类型的转换方法，转换结果会代替原对象参与摘要计算
+     * <p>
+     * 按注册顺序匹配，先于内置类型检查，也可以用于覆盖内置类型的处理方式
+     *
+     * @param type          需要转换的类型，包括其子类
+     * @param canonicalizer 将对象转换为可计算摘要的值，例如由关键字段组成的 {@link List}
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> StableDataHasher register(Class<T> type,
+        Function<? super T, ?> canonicalizer) {
+        canonicalizers.put(type, value -> canonicalizer.apply((T) value));
+        return this;
+    }
+
+    @Override
+    public String hash(Map<String, Object> data) {
+        try {
+            return HexFormat.of().formatHex(digest(data, 0));
+        } catch (UnsupportedValueException e) {
+            logger.debug("Skip result cache because {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] digest(Object value, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new UnsupportedValueException("data is nested too deeply");
+        }
+        MessageDigest digest = newDigest();
+        update(digest, value, depth);
+        return digest.digest();
+    }
+
+    private void update(MessageDigest digest, Object value, int depth) {
+        if (value == null) {
+            digest.update((byte) 'N');
+            return;
+        }
+        Function<Object, Object> canonicalizer = canonicalizer(value.getClass());
+        if (canonicalizer != null) {
+            tag(digest, 'X', value.getClass().getName());
+            digest.update(digest(canonicalizer.apply(value), depth + 1));
+        } else if (value instanceof CharSequence) {
+            tag(digest, 'S', value.toString());
+        } else if (value instanceof BigDecimal decimal) {
+            // 1.0 与 1.00 视为相同的值
+            tag(digest, 'D', decimal.stripTrailingZeros().toPlainString());
+        } else if (value instanceof Number || value instanceof Boolean
+            || value instanceof Character) {
+            tag(digest, 'P', value.getClass().getName());
+            tag(digest, 'V', value.toString());
+        } else if (value instanceof Enum<?> constant) {
+            tag(digest, 'E', constant.getDeclaringClass().getName());
+            tag(digest, 'V', constant.name());
+        } else if (value instanceof Date date) {
+            tag(digest, 'T', Long.toString(date.getTime()));
+        } else if (value instanceof TemporalAccessor || value instanceof UUID
+            || value instanceof URI || value instanceof Path) {
+            tag(digest, 'T', value.getClass().getName());
+            tag(digest, 'V', value.toString());
+        } else if (value instanceof Map<?, ?> map) {
+            List<byte[]> entries = new ArrayList<>(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                byte[] key = digest(entry.getKey(), depth + 1);
+                byte[] item = digest(entry.getValue(), depth + 1);
+                byte[] pair = Arrays.copyOf(key, key.length + item.length);
+                System.arraycopy(item, 0, pair, key.length, item.length);
+                entries.add(pair);
+            }
+            unordered(digest, 'M', entries);
+        } else if (value instanceof Set<?> set) {
+            List<byte[]> elements = new ArrayList<>(set.size());
+            for (Object element : set) {
+                elements.add(digest(element, depth + 1));
+            }
+            unordered(digest, 'U', elements);
+        } else if (value instanceof Collection<?> collection) {
+            ordered(digest, collection.iterator(), depth);
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            List<Object> elements = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                elements.add(Array.get(value, i));
+            }
+            ordered(digest, elements.iterator(), depth);
+        } else if (value instanceof Record) {
+            tag(digest, 'R', value.getClass().getName());
+            for (RecordComponent component : value.getClass().getRecordComponents()) {
+                tag(digest, 'F', component.getName());
+                digest.update(digest(componentValue(value, component), depth + 1));
+            }
+        } else {
+            throw new UnsupportedValueException(
+                "no stable hash for " + value.getClass().getName());
+        }
+    }
+
+    private synchronized Function<Object, Object> canonicalizer(Class<?> type) {
+        for (Map.Entry<Class<?>, Function<Object, Object>> entry : canonicalizers.entrySet()) {
+            if (entry.getKey().isAssignableFrom(type)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private void ordered(MessageDigest digest, Iterator<?> iterator, int depth) {
+        digest.update((byte) 'L');
+        while (iterator.hasNext()) {
+            digest.update(digest(iterator.next(), depth + 1));
+        }
+        digest.update((byte) ']');
+    }
+
+    private static void unordered(MessageDigest digest, char type, List<byte[]> parts) {
+        parts.sort(Arrays::compare);
+        digest.update((byte) type);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(parts.size()).array());
+        for (byte[] part : parts) {
+            digest.update(part);
+        }
+    }
+
+    private static void tag(MessageDigest digest, char type, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) type);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static Object componentValue(Object record, RecordComponent component) {
+        try {
+            component.getAccessor().setAccessible(true);
+            return component.getAccessor().invoke(record);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new UnsupportedValueException(
+                "failed to read " + record.getClass().getName() + "." + component.getName());
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class UnsupportedValueException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedValueException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
@@ -1,36 +1,71 @@
 package cc.ddrpa.motto.html.embedded;
 
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
+import com.lowagie.text.Image;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Base64;
+import java.util.Iterator;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
 import org.xhtmlrenderer.pdf.ITextRenderer;
 
 /**
- * 一种用于在文档中嵌入图像的的方案，实际上是将图像转换为 Base64 编码的字符串保存在 {@code <img>} 标签中
+ * 一种用于在文档中嵌入图像的的方案
+ * <p>
+ * 在渲染期间图像被登记到 {@link ImageRegistry}，{@code <img>} 标签中只保存一个短 URI；其他情况下将图像转换为 Base64 编码的
+ * data URL 保存在 {@code <img>} 标签中
  */
 public class EmbeddedImage {
 
     private static float DEFAULT_DOTS_PER_POINT = ITextRenderer.DEFAULT_DOTS_PER_POINT;
     private static int DEFAULT_DOTS_PER_PIXEL = ITextRenderer.DEFAULT_DOTS_PER_PIXEL;
     private static int DEFAULT_DEVICE_PIXEL_RATIO = 1;
+    private static EncodingProfile DEFAULT_ENCODING_PROFILE = EncodingProfile.DEFAULT;
+    private static StorageMode DEFAULT_STORAGE_MODE = StorageMode.RASTER;
+    private static final Cleaner spillCleaner = Cleaner.create();
 
     private float dotsPerPoint;
     private int dotsPerPixel;
     private int devicePixelRatio;
+    private EncodingProfile encodingProfile;
+    private StorageMode storageMode = StorageMode.RASTER;
+    /**
+     * 从字节数组或输入流创建且没有被缩放时保留原始数据，输出时直接使用，不解码也不重新编码
+     */
+    private Source source;
+    /**
+     * 解码后的图像，保留原始数据时在第一次需要像素时才解码；{@link StorageMode#RASTER} 以外的模式下不保留
+     */
     private BufferedImage image;
+    /**
+     * 非 {@link StorageMode#RASTER} 模式下待执行的缩放，小于 0 表示不缩放
+     */
+    private int pendingWidth = -1;
+    private int pendingHeight = -1;
+    /**
+     * 编码后的图像与 data URL，模版中每次引用图像都会调用 {@link #toString()}，因此缓存编码的结果，缩放图像时清除
+     */
+    private volatile Encoded encoded;
+    private volatile String dataURL;
+    private volatile Image pdfImage;
 
-    private EmbeddedImage(BufferedImage image, float dotsPerPoint, int dotsPerPixel,
-        int devicePixelRatio) {
+    private EmbeddedImage(Source source, BufferedImage image, float dotsPerPoint,
+        int dotsPerPixel, int devicePixelRatio, EncodingProfile encodingProfile) {
         this.dotsPerPoint = dotsPerPoint;
         this.dotsPerPixel = dotsPerPixel;
         this.devicePixelRatio = devicePixelRatio;
+        this.encodingProfile = encodingProfile;
+        this.source = source;
         this.image = image;
     }
 
@@ -61,19 +96,34 @@ public class EmbeddedImage {
         DEFAULT_DEVICE_PIXEL_RATIO = devicePixelRatio;
     }
 
+    /**
+     * 设置默认的编码参数
+     *
+     * @param encodingProfile 例如 {@link EncodingProfile#FAST} 或 {@link EncodingProfile#SMALL}
+     */
+    public static void setDefaultEncodingProfile(EncodingProfile encodingProfile) {
+        DEFAULT_ENCODING_PROFILE = encodingProfile;
+    }
+
+    /**
+     * 设置默认的存储方式
+     *
+     * @param storageMode
+     */
+    public static void setDefaultStorageMode(StorageMode storageMode) {
+        DEFAULT_STORAGE_MODE = storageMode;
+    }
+
     /**
      * 从输入流中创建一个新的 {@link EmbeddedImage} 实例
      *
      * @param inputStream 图像输入流
      * @return instance of {@link EmbeddedImage}
      * @throws IOException
+     * @see #newInstance(byte[])
      */
     public static EmbeddedImage newInstance(InputStream inputStream) throws IOException {
-        BufferedImage image = ImageIO.read(inputStream);
-        return new EmbeddedImage(image,
-            DEFAULT_DOTS_PER_POINT,
-            DEFAULT_DOTS_PER_PIXEL,
-            DEFAULT_DEVICE_PIXEL_RATIO);
+        return newInstance(inputStream.readAllBytes());
     }
 
     /**
@@ -83,23 +133,30 @@ public class EmbeddedImage {
      * @return instance of {@link EmbeddedImage}
      */
     public static EmbeddedImage newInstance(BufferedImage bufferedImage) {
-        return new EmbeddedImage(bufferedImage,
+        return new EmbeddedImage(null, bufferedImage,
             DEFAULT_DOTS_PER_POINT,
             DEFAULT_DOTS_PER_PIXEL,
-            DEFAULT_DEVICE_PIXEL_RATIO);
+            DEFAULT_DEVICE_PIXEL_RATIO,
+            DEFAULT_ENCODING_PROFILE)
+            .setStorageMode(DEFAULT_STORAGE_MODE);
     }
 
     /**
      * 从字节数组中创建一个新的 {@link EmbeddedImage} 实例
+     * <p>
+     * 创建时只读取图像的格式与尺寸，不解码像素。没有缩放时 JPEG 与 PNG 图像按原始数据输出，避免重新编码造成的损失与开销
      *
      * @param bytes
      * @return instance of {@link EmbeddedImage}
-     * @throws IOException
+     * @throws IOException 无法识别图像格式时
      */
     public static EmbeddedImage newInstance(byte[] bytes) throws IOException {
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(bytes)) {
-            return EmbeddedImage.newInstance(bis);
-        }
+        return new EmbeddedImage(Source.probe(bytes), null,
+            DEFAULT_DOTS_PER_POINT,
+            DEFAULT_DOTS_PER_PIXEL,
+            DEFAULT_DEVICE_PIXEL_RATIO,
+            DEFAULT_ENCODING_PROFILE)
+            .setStorageMode(DEFAULT_STORAGE_MODE);
     }
 
     /**
@@ -137,6 +194,63 @@ public class EmbeddedImage {
         return this;
     }
 
+    /**
+     * 设置输出图像时使用的编码参数
+     *
+     * @param encodingProfile
+     * @return instance of {@link EmbeddedImage}
+     */
+    public EmbeddedImage setEncodingProfile(EncodingProfile encodingProfile) {
+        this.encodingProfile = encodingProfile;
+        invalidateEncoded();
+        return this;
+    }
+
+    /**
+     * 设置渲染之前保存图像的方式
+     * <p>
+     * 批量准备大量带图像的数据时，可以使用 {@link StorageMode#COMPRESSED} 或 {@link StorageMode#SPILL}，
+     * 每个实例只占用压缩后数据的大小，缩放推迟到渲染时执行，解码后的像素在编码后立即释放。
+     * 从 {@link BufferedImage} 创建的图像会先无损地编码为 PNG。
+     *
+     * @param storageMode
+     * @return instance of {@link EmbeddedImage}
+     */
+    public EmbeddedImage setStorageMode(StorageMode storageMode) {
+        try {
+            if (storageMode == StorageMode.RASTER) {
+                if (this.storageMode != StorageMode.RASTER) {
+                    // 执行待执行的缩放并保留像素
+                    this.storageMode = StorageMode.RASTER;
+                    if (pendingWidth > 0) {
+                        image = raster();
+                        source = null;
+                        pendingWidth = -1;
+                        pendingHeight = -1;
+                    } else if (source != null) {
+                        source = source.inMemory();
+                    }
+                }
+                return this;
+            }
+            if (source == null) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                ImageIO.write(image, EmbeddedResource.PNG, bos);
+                source = Source.probe(bos.toByteArray());
+            }
+            image = null;
+            if (storageMode == StorageMode.SPILL) {
+                source = source.spill(this);
+            } else {
+                source = source.inMemory();
+            }
+            this.storageMode = storageMode;
+            return this;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * 按照毫米为目标尺寸的单位缩放图像
      *
@@ -161,25 +275,129 @@ public class EmbeddedImage {
 
     /**
      * 将图片转换为 data URL
+     * <p>
+     * 结果会被缓存，多次调用只会编码一次，缩放图像后重新编码。{@link StorageMode#RASTER} 以外的模式下不缓存结果
      *
      * @return Data URL in Base64
      * @throws IOException
      */
     public String toDataURL() throws IOException {
+        String cached = dataURL;
+        if (cached == null) {
+            Encoded current = encode();
+            cached = String.format("data:image/%s;base64,%s", current.format(),
+                Base64.getEncoder().encodeToString(current.bytes()));
+            if (storageMode == StorageMode.RASTER) {
+                dataURL = cached;
+            }
+        }
+        return cached;
+    }
+
+    private Encoded encode() throws IOException {
+        Encoded cached = encoded;
+        if (cached != null) {
+            return cached;
+        }
+        if (isPassThrough()) {
+            cached = new Encoded(source.format(), source.bytes());
+            if (storageMode == StorageMode.RASTER) {
+                encoded = cached;
+            }
+            return cached;
+        }
+        BufferedImage image = raster();
+        ImageProcessEvent event = ImageProcessEvent.start(ImageProcessEvent.ENCODE);
         try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
             // 含有 alpha 通道的图像在 ImageIO JPG Writer 中可能会导致异常行为
             // 见 https://web.archive.org/web/20150522182756/https://bugs.java.com/bugdatabase/view_bug.do?bug_id=4836466
             // 考虑到确实有可能存在对 alpha 通道的需求，这里分别按照两种格式输出
-            if (image.getColorModel().hasAlpha()) {
-                ImageIO.write(this.image, "png", bos);
-                return String.format("data:image/png;base64,%s", Base64.getEncoder()
-                    .encodeToString(bos.toByteArray()));
+            String format = image.getColorModel().hasAlpha() ? EmbeddedResource.PNG
+                : EmbeddedResource.JPEG;
+            encodingProfile.write(image, format, bos);
+            cached = new Encoded(format, bos.toByteArray());
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.format = cached.format();
+            event.sourceWidth = image.getWidth();
+            event.sourceHeight = image.getHeight();
+            event.targetWidth = image.getWidth();
+            event.targetHeight = image.getHeight();
+            event.bytes = cached.bytes().length;
+            event.commit();
+        }
+        // 其他模式下只保留压缩后的原始数据，编码结果用完即释放
+        if (storageMode == StorageMode.RASTER) {
+            encoded = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * 是否直接输出原始数据
+     */
+    private boolean isPassThrough() {
+        if (source == null || pendingWidth > 0 || !source.isPassThrough()) {
+            return false;
+        }
+        return !(encodingProfile.opaqueAsJpeg()
+            && EmbeddedResource.PNG.equals(source.format())
+            && !source.alpha());
+    }
+
+    /**
+     * 获取解码后的图像，保留原始数据时在第一次调用时解码
+     */
+    private BufferedImage raster() throws IOException {
+        if (image != null) {
+            return image;
+        }
+        BufferedImage decoded = pendingWidth > 0
+            ? ImageScaling.resize(ImageScaling.decode(source.bytes(), source.width(),
+            source.height(), pendingWidth, pendingHeight), pendingWidth, pendingHeight)
+            : source.decode();
+        if (storageMode == StorageMode.RASTER) {
+            image = decoded;
+        }
+        return decoded;
+    }
+
+    private void invalidateEncoded() {
+        encoded = null;
+        dataURL = null;
+        pdfImage = null;
+    }
+
+    /**
+     * 将图像转换为 OpenPDF 的 {@link Image}，供 {@link cc.ddrpa.motto.html.ResourcesUserAgent} 解析 {@link ImageRegistry}
+     * 中的图像时使用
+     * <p>
+     * 保留原始数据时直接使用原始数据；其他情况下不透明的图像使用编码后的 JPEG 数据，OpenPDF 只读取文件头，数据原样写入 PDF；含有 alpha 通道的图像直接读取像素。
+     * {@link StorageMode#RASTER} 以外的模式下每次调用都返回新的实例，不缓存结果，也不缓存编码后的数据。
+     * 缓存的结果由多次引用共享，调用方在修改尺寸前需要复制一份。
+     *
+     * @return instance of {@link Image}
+     * @throws IOException
+     */
+    public Image toPdfImage() throws IOException {
+        if (storageMode != StorageMode.RASTER) {
+            // 不持有解码后的像素，alpha 通道随 PNG 数据一起交给 OpenPDF
+            return Image.getInstance(encode().bytes());
+        }
+        Image cached = pdfImage;
+        if (cached == null) {
+            if (isPassThrough()) {
+                cached = Image.getInstance(source.bytes());
             } else {
-                ImageIO.write(this.image, "jpeg", bos);
-                return String.format("data:image/jpeg;base64,%s", Base64.getEncoder()
-                    .encodeToString(bos.toByteArray()));
+                BufferedImage image = raster();
+                cached = image.getColorModel().hasAlpha()
+                    ? Image.getInstance(image, null)
+                    : Image.getInstance(encode().bytes());
             }
+            pdfImage = cached;
         }
+        return cached;
     }
 
     /**
@@ -193,10 +411,16 @@ public class EmbeddedImage {
      * typeConversionHandler = ((UberspectImpl) ri.getUberspect()).getConversionHandler();
      * typeConversionHandler.addConverter(String.class, EmbeddedImage.class, (object) -> ((EmbeddedImage) object).toDataURL());
      * </code></pre> 似乎没有成功
+     * <p>
+     * 渲染期间返回 {@link ImageRegistry} 中的短 URI，其他情况下返回 data URL
      *
-     * @return Data URL in Base64
+     * @return URI of the image
      */
     public String toString() {
+        ImageRegistry registry = ImageRegistry.current();
+        if (registry != null) {
+            return registry.register(this);
+        }
         try {
             return this.toDataURL();
         } catch (IOException e) {
@@ -210,7 +434,10 @@ public class EmbeddedImage {
      * @return width in pixel
      */
     public int getWidth() {
-        return this.image.getWidth();
+        if (this.image != null) {
+            return this.image.getWidth();
+        }
+        return this.pendingWidth > 0 ? this.pendingWidth : this.source.width();
     }
 
     /**
@@ -219,7 +446,10 @@ public class EmbeddedImage {
      * @return height in pixel
      */
     public int getHeight() {
-        return this.image.getHeight();
+        if (this.image != null) {
+            return this.image.getHeight();
+        }
+        return this.pendingHeight > 0 ? this.pendingHeight : this.source.height();
     }
 
     /**
@@ -230,6 +460,7 @@ public class EmbeddedImage {
      */
     @Deprecated
     public void exportAsJPEG(OutputStream outputStream) throws IOException {
+        BufferedImage image = raster();
         // 含有 alpha 通道的图像在 ImageIO JPG Writer 中可能会导致异常行为
         // 见 https://web.archive.org/web/20150522182756/https://bugs.java.com/bugdatabase/view_bug.do?bug_id=4836466
         // 一种方法是通过转换去除 alpha 通道
@@ -239,7 +470,7 @@ public class EmbeddedImage {
             newBufferedImage.createGraphics().drawImage(image, 0, 0, null);
             ImageIO.write(newBufferedImage, "jpeg", outputStream);
         } else {
-            ImageIO.write(this.image, "jpeg", outputStream);
+            ImageIO.write(image, "jpeg", outputStream);
         }
     }
 
@@ -275,17 +506,134 @@ public class EmbeddedImage {
     private EmbeddedImage scaleWithPixel(int targetWidth, int targetHeight) {
         int targetWidthWithDPR = targetWidth * this.devicePixelRatio;
         int targetHeightWithDPR = targetHeight * this.devicePixelRatio;
-        BufferedImage before = this.image;
-        int originalWidth = before.getWidth();
-        int originalHeight = before.getHeight();
-        BufferedImage after = new BufferedImage(targetWidthWithDPR, targetHeightWithDPR,
-            before.getType());
-        AffineTransform scaleTransform = AffineTransform.getScaleInstance(
-            1.0 * targetWidthWithDPR / originalWidth, 1.0 * targetHeightWithDPR / originalHeight);
-        AffineTransformOp scaleOp = new AffineTransformOp(scaleTransform,
-            AffineTransformOp.TYPE_BICUBIC);
-        after = scaleOp.filter(before, after);
+        if (this.storageMode != StorageMode.RASTER) {
+            // 缩放总是相对于原始图像，推迟到输出时执行
+            this.pendingWidth = targetWidthWithDPR;
+            this.pendingHeight = targetHeightWithDPR;
+            invalidateEncoded();
+            return this;
+        }
+        BufferedImage before;
+        try {
+            // 还没有解码时只按目标尺寸解码，不展开原始分辨率的像素
+            before = this.image != null
+                ? this.image
+                : ImageScaling.decode(source.bytes(), source.width(), source.height(),
+                    targetWidthWithDPR, targetHeightWithDPR);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        BufferedImage after = ImageScaling.resize(before, targetWidthWithDPR,
+            targetHeightWithDPR);
         this.image = after;
+        this.source = null;
+        invalidateEncoded();
         return this;
     }
-}
\ No newline at end of file
+
+    /**
+     * 编码后的图像
+     *
+     * @param format 图像格式，见 {@link EmbeddedResource}
+     * @param bytes  编码后的数据
+     */
+    private record Encoded(String format, byte[] bytes) {
+
+    }
+
+    /**
+     * 图像的原始数据，保存在内存或临时文件中
+     *
+     * @param data   内存中的原始数据，保存在临时文件中时为 null
+     * @param file   保存原始数据的临时文件
+     * @param format ImageIO 识别出的格式名称，小写
+     * @param width  宽度，像素
+     * @param height 高度，像素
+     * @param alpha  是否含有 alpha 通道
+     */
+    private record Source(byte[] data, Path file, String format, int width, int height,
+                          boolean alpha) {
+
+        /**
+         * 只读取文件头获得格式与尺寸
+         */
+        static Source probe(byte[] bytes) throws IOException {
+            try (ImageInputStream iis = ImageIO.createImageInputStream(
+                new ByteArrayInputStream(bytes))) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+                if (!readers.hasNext()) {
+                    throw new IOException("Unsupported image format");
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(iis, true, true);
+                    Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+                    boolean alpha = types.hasNext()
+                        && types.next().getColorModel().hasAlpha();
+                    return new Source(bytes, null, reader.getFormatName().toLowerCase(),
+                        reader.getWidth(0), reader.getHeight(0), alpha);
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+
+        byte[] bytes() throws IOException {
+            return data != null ? data : Files.readAllBytes(file);
+        }
+
+        /**
+         * 将原始数据写入临时文件，临时文件在 {@code owner} 被回收后删除
+         */
+        Source spill(Object owner) throws IOException {
+            if (file != null) {
+                return this;
+            }
+            Path spilled = Files.createTempFile("motto-img-", "." + format);
+            Files.write(spilled, data);
+            spillCleaner.register(owner, () -> {
+                try {
+                    Files.deleteIfExists(spilled);
+                } catch (IOException ignored) {
+                    // 临时目录会被系统清理
+                }
+            });
+            return new Source(null, spilled, format, width, height, alpha);
+        }
+
+        /**
+         * 将原始数据读回内存，临时文件随旧的 {@code owner} 注册的清理动作删除
+         */
+        Source inMemory() throws IOException {
+            return data != null ? this
+                : new Source(bytes(), null, format, width, height, alpha);
+        }
+
+        /**
+         * 是否可以不经转换直接输出，只有 JPEG 与 PNG 会被原样输出
+         */
+        boolean isPassThrough() {
+            return EmbeddedResource.JPEG.equals(format) || EmbeddedResource.PNG.equals(format);
+        }
+
+        BufferedImage decode() throws IOException {
+            ImageProcessEvent event = ImageProcessEvent.start(ImageProcessEvent.DECODE);
+            byte[] data = bytes();
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(data));
+            if (decoded == null) {
+                throw new IOException("Unsupported image format: " + format);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.format = format;
+                event.sourceWidth = width;
+                event.sourceHeight = height;
+                event.targetWidth = decoded.getWidth();
+                event.targetHeight = decoded.getHeight();
+                event.bytes = data.length;
+                event.commit();
+            }
+            return decoded;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package cc.ddrpa.motto.html.embedded;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * {@link EmbeddedImage} 输出图像时使用的编码参数
+ * <p>
+ * 含有 alpha 通道的图像总是输出为 PNG，其他图像输出为 JPEG。没有缩放的 JPEG 与 PNG 图像默认按原始数据输出，
+ * 不受编码参数影响，除非启用了 {@code opaqueAsJpeg} 且原始图像是不透明的 PNG。
+ *
+ * @param jpegQuality         JPEG 的压缩质量，取值 0 到 1，越大质量越好、文件越大
+ * @param pngCompressionLevel PNG 的 deflate 压缩级别，取值 0 到 9，越大文件越小、编码越慢，为 -1 时使用 ImageIO 的默认值
+ * @param opaqueAsJpeg        是否将不透明的 PNG 原始图像转换为 JPEG 输出
+ */
+public record EncodingProfile(float jpegQuality, int pngCompressionLevel, boolean opaqueAsJpeg) {
+
+    /**
+     * 与 {@link ImageIO#write} 的默认参数相同
+     */
+    public static final EncodingProfile DEFAULT = new EncodingProfile(0.75f, -1, false);
+    /**
+     * 优先考虑编码速度：较高的 JPEG 质量，最低的 PNG 压缩级别，原始图像尽量原样输出
+     */
+    public static final EncodingProfile FAST = new EncodingProfile(0.9f, 1, false);
+    /**
+     * 优先考虑文件大小：较低的 JPEG 质量，最高的 PNG 压缩级别，不透明的 PNG 转换为 JPEG
+     */
+    public static final EncodingProfile SMALL = new EncodingProfile(0.6f, 9, true);
+
+    public EncodingProfile {
+        if (jpegQuality < 0 || jpegQuality > 1) {
+            throw new IllegalArgumentException("jpegQuality must be between 0 and 1");
+        }
+        if (pngCompressionLevel < -1 || pngCompressionLevel > 9) {
+            throw new IllegalArgumentException("pngCompressionLevel must be between -1 and 9");
+        }
+    }
+
+    /**
+     * 按照编码参数写出图像
+     *
+     * @param image        图像
+     * @param format       {@link EmbeddedResource#JPEG} 或 {@link EmbeddedResource#PNG}
+     * @param outputStream
+     * @throws IOException
+     */
+    void write(BufferedImage image, String format, OutputStream outputStream)
+        throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for " + format);
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(outputStream)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (EmbeddedResource.JPEG.equals(format)) {
+                image = toRGB(image);
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            } else if (pngCompressionLevel >= 0 && param.canWriteCompressed()) {
+                // PNG writer 将压缩质量换算为 deflate 级别：level = 9 * (1 - quality)
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(1f - pngCompressionLevel / 9f);
+            }
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * JPEG writer 不能处理调色板等颜色模型，转换为 RGB
+     */
+    private static BufferedImage toRGB(BufferedImage image) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_3BYTE_BGR
+            || type == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(),
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+}
@@ -0,0 +1,53 @@
+package cc.ddrpa.motto.html.embedded;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * {@link EmbeddedImage} 解码、缩放或编码图像的 JFR 事件
+ */
+@Name("cc.ddrpa.motto.ImageProcess")
+@Label("Image Processing")
+@Category({"Motto", "Image"})
+@Description("Decoding, scaling or encoding an EmbeddedImage")
+@StackTrace(false)
+class ImageProcessEvent extends jdk.jfr.Event {
+
+    static final String DECODE = "decode";
+    static final String SCALE = "scale";
+    static final String ENCODE = "encode";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Format")
+    String format;
+
+    @Label("Source Width")
+    int sourceWidth;
+
+    @Label("Source Height")
+    int sourceHeight;
+
+    @Label("Target Width")
+    int targetWidth;
+
+    @Label("Target Height")
+    int targetHeight;
+
+    @Label("Bytes")
+    @Description("Compressed bytes read by decode or written by encode")
+    @DataAmount
+    long bytes;
+
+    static ImageProcessEvent start(String operation) {
+        ImageProcessEvent event = new ImageProcessEvent();
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,69 @@
+package cc.ddrpa.motto.html.embedded;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次渲染中引用的 {@link EmbeddedImage}
+ * <p>
+ * 渲染期间登记表绑定在合并模版与排版的线程上，模版中引用的图像输出为形如 {@code motto-img://1} 的短 URI，
+ * 由 {@link cc.ddrpa.motto.html.ResourcesUserAgent} 直接解析为已解码的图像，不再经过 Base64 编码、XML 解析与再次解码。
+ * 没有绑定登记表时图像仍然输出为 data URL。
+ */
+public final class ImageRegistry {
+
+    public static final String URI_PREFIX = "motto-img://";
+
+    private static final ThreadLocal<ImageRegistry> current = new ThreadLocal<>();
+
+    private final Map<EmbeddedImage, String> uris = new ConcurrentHashMap<>();
+    private final Map<String, EmbeddedImage> images = new ConcurrentHashMap<>();
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * 将登记表绑定到当前线程
+     *
+     * @param registry 要绑定的登记表，为 null 时解除绑定
+     * @return 之前绑定在当前线程上的登记表，用于恢复
+     */
+    public static ImageRegistry bind(ImageRegistry registry) {
+        ImageRegistry previous = current.get();
+        if (registry == null) {
+            current.remove();
+        } else {
+            current.set(registry);
+        }
+        return previous;
+    }
+
+    /**
+     * 当前线程绑定的登记表
+     *
+     * @return 没有绑定时返回 null
+     */
+    public static ImageRegistry current() {
+        return current.get();
+    }
+
+    /**
+     * 登记图像，同一个图像多次登记时返回相同的 URI
+     */
+    String register(EmbeddedImage image) {
+        return uris.computeIfAbsent(image, key -> {
+            String uri = URI_PREFIX + counter.incrementAndGet();
+            images.put(uri, key);
+            return uri;
+        });
+    }
+
+    /**
+     * 根据 URI 查找登记的图像
+     *
+     * @param uri 形如 {@code motto-img://1} 的 URI
+     * @return 登记的图像，不存在时返回 null
+     */
+    public EmbeddedImage resolve(String uri) {
+        return images.get(uri);
+    }
+}
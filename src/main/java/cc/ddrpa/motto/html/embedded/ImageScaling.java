@@ -0,0 +1,124 @@
+package cc.ddrpa.motto.html.embedded;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * 缩小图像时按目标尺寸解码与缩放，内存占用与耗时只与目标尺寸相关
+ */
+final class ImageScaling {
+
+    private ImageScaling() {
+    }
+
+    /**
+     * 以接近目标尺寸的分辨率解码图像
+     * <p>
+     * 通过 {@link ImageReadParam#setSourceSubsampling(int, int, int, int)} 跳过不需要的像素，
+     * 解码结果至少保留目标尺寸的两倍，留给 {@link #resize(BufferedImage, int, int)} 平滑缩小。
+     *
+     * @param bytes        图像的原始数据
+     * @param width        原始宽度
+     * @param height       原始高度
+     * @param targetWidth  目标宽度
+     * @param targetHeight 目标高度
+     * @return decoded image
+     * @throws IOException
+     */
+    static BufferedImage decode(byte[] bytes, int width, int height, int targetWidth,
+        int targetHeight) throws IOException {
+        int subsampling = Math.max(1, Math.min(width / Math.max(1, targetWidth * 2),
+            height / Math.max(1, targetHeight * 2)));
+        try (ImageInputStream iis = ImageIO.createImageInputStream(
+            new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            ImageProcessEvent event = ImageProcessEvent.start(ImageProcessEvent.DECODE);
+            try {
+                reader.setInput(iis, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                BufferedImage decoded = reader.read(0, param);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.format = reader.getFormatName().toLowerCase();
+                    event.sourceWidth = width;
+                    event.sourceHeight = height;
+                    event.targetWidth = decoded.getWidth();
+                    event.targetHeight = decoded.getHeight();
+                    event.bytes = bytes.length;
+                    event.commit();
+                }
+                return decoded;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 缩放图像
+     * <p>
+     * 缩小到一半以下时先逐次减半再缩放到目标尺寸，避免一次性大比例插值产生的锯齿与摩尔纹
+     *
+     * @param source       原始图像
+     * @param targetWidth  目标宽度
+     * @param targetHeight 目标高度
+     * @return scaled image
+     */
+    static BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight) {
+        ImageProcessEvent event = ImageProcessEvent.start(ImageProcessEvent.SCALE);
+        BufferedImage current = source;
+        int width = current.getWidth();
+        int height = current.getHeight();
+        while (width / 2 >= targetWidth && height / 2 >= targetHeight) {
+            width /= 2;
+            height /= 2;
+            current = draw(current, width, height, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        if (width != targetWidth || height != targetHeight) {
+            current = draw(current, targetWidth, targetHeight,
+                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.sourceWidth = source.getWidth();
+            event.sourceHeight = source.getHeight();
+            event.targetWidth = targetWidth;
+            event.targetHeight = targetHeight;
+            event.commit();
+        }
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height,
+        Object interpolation) {
+        BufferedImage target = new BufferedImage(width, height,
+            source.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB
+                : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+                RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+}
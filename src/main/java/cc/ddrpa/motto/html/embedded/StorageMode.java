@@ -0,0 +1,19 @@
+package cc.ddrpa.motto.html.embedded;
+
+/**
+ * {@link EmbeddedImage} 在渲染之前保存图像的方式
+ */
+public enum StorageMode {
+    /**
+     * 缩放时立即解码并保留缩放后的像素，重复输出时最快
+     */
+    RASTER,
+    /**
+     * 只保留压缩后的原始数据与待执行的缩放，渲染时才解码，像素在编码后立即释放
+     */
+    COMPRESSED,
+    /**
+     * 与 {@link #COMPRESSED} 相同，但原始数据写入临时文件，内存中只保留文件路径，实例被回收后临时文件会被删除
+     */
+    SPILL
+}
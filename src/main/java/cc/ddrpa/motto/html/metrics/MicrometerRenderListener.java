@@ -0,0 +1,72 @@
+package cc.ddrpa.motto.html.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 将渲染统计数据写入 Micrometer 的监听器
+ * <p>
+ * 需要自行引入 {@code io.micrometer:micrometer-core}。注册的指标：
+ * <ul>
+ *     <li>{@code motto.render}：总耗时</li>
+ *     <li>{@code motto.render.phase}：各阶段耗时，以 {@code phase} 标签区分</li>
+ *     <li>{@code motto.render.html.size}：合并后 XHTML 的字符数</li>
+ *     <li>{@code motto.render.pages}：页数</li>
+ *     <li>{@code motto.render.output.size}：输出的字节数</li>
+ *     <li>{@code motto.render.image.cache}：共享图片缓存的访问次数，以 {@code result} 标签区分命中与未命中</li>
+ * </ul>
+ * 模版名称可能包含内容摘要，为避免标签数量失控不作为标签记录。
+ */
+public class MicrometerRenderListener implements RenderListener {
+
+    private final Timer total;
+    private final Map<RenderPhase, Timer> phases = new EnumMap<>(RenderPhase.class);
+    private final DistributionSummary htmlSize;
+    private final DistributionSummary pages;
+    private final DistributionSummary outputSize;
+    private final Counter imageCacheHits;
+    private final Counter imageCacheMisses;
+
+    public MicrometerRenderListener(MeterRegistry registry) {
+        this.total = Timer.builder("motto.render")
+            .description("Time to render one document")
+            .register(registry);
+        for (RenderPhase phase : RenderPhase.values()) {
+            phases.put(phase, Timer.builder("motto.render.phase")
+                .description("Time spent in one phase of rendering")
+                .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                .register(registry));
+        }
+        this.htmlSize = DistributionSummary.builder("motto.render.html.size")
+            .baseUnit("chars")
+            .register(registry);
+        this.pages = DistributionSummary.builder("motto.render.pages")
+            .baseUnit("pages")
+            .register(registry);
+        this.outputSize = DistributionSummary.builder("motto.render.output.size")
+            .baseUnit("bytes")
+            .register(registry);
+        this.imageCacheHits = Counter.builder("motto.render.image.cache")
+            .tag("result", "hit")
+            .register(registry);
+        this.imageCacheMisses = Counter.builder("motto.render.image.cache")
+            .tag("result", "miss")
+            .register(registry);
+    }
+
+    @Override
+    public void onRender(RenderMetrics metrics) {
+        total.record(metrics.total());
+        phases.forEach((phase, timer) -> timer.record(metrics.phase(phase)));
+        htmlSize.record(metrics.htmlChars());
+        pages.record(metrics.pages());
+        outputSize.record(metrics.outputBytes());
+        imageCacheHits.increment(metrics.imageCacheHits());
+        imageCacheMisses.increment(metrics.imageCacheMisses());
+    }
+}
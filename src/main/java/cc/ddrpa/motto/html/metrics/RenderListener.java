@@ -0,0 +1,24 @@
+package cc.ddrpa.motto.html.metrics;
+
+/**
+ * 接收渲染统计数据的监听器
+ * <p>
+ * 每份文档成功渲染后在渲染线程中调用一次，实现应当尽快返回。抛出的异常会被记录但不会影响渲染结果。
+ * 使用默认的 {@link #NOOP} 时不会采集任何数据。
+ */
+@FunctionalInterface
+public interface RenderListener {
+
+    /**
+     * 不采集数据的监听器
+     */
+    RenderListener NOOP = metrics -> {
+    };
+
+    /**
+     * 一份文档渲染完成
+     *
+     * @param metrics 这份文档的统计数据
+     */
+    void onRender(RenderMetrics metrics);
+}
@@ -0,0 +1,40 @@
+package cc.ddrpa.motto.html.metrics;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 一次渲染的统计数据
+ *
+ * @param template         模版名称
+ * @param total            从开始合并到 PDF 写完的总耗时
+ * @param phases           各阶段的耗时，没有经历的阶段为 {@link Duration#ZERO}
+ * @param htmlChars        合并后 XHTML 的字符数
+ * @param pages            页数
+ * @param outputBytes      写到输出流的字节数
+ * @param imageCacheHits   共享图片缓存的命中次数
+ * @param imageCacheMisses 共享图片缓存的未命中次数
+ */
+public record RenderMetrics(String template,
+                            Duration total,
+                            Map<RenderPhase, Duration> phases,
+                            long htmlChars,
+                            int pages,
+                            long outputBytes,
+                            int imageCacheHits,
+                            int imageCacheMisses) {
+
+    public RenderMetrics {
+        phases = Map.copyOf(phases);
+    }
+
+    /**
+     * 某个阶段的耗时
+     *
+     * @param phase 阶段
+     * @return 没有经历该阶段时返回 {@link Duration#ZERO}
+     */
+    public Duration phase(RenderPhase phase) {
+        return phases.getOrDefault(phase, Duration.ZERO);
+    }
+}
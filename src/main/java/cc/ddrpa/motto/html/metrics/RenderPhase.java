@@ -0,0 +1,31 @@
+package cc.ddrpa.motto.html.metrics;
+
+/**
+ * 渲染过程中被计时的阶段
+ */
+public enum RenderPhase {
+    /**
+     * 将数据合并到 Velocity 模版中。流式合并时合并与解析同时进行，两者的耗时会重叠
+     */
+    MERGE,
+    /**
+     * 解析合并后的 XHTML 并加载样式表
+     */
+    PARSE,
+    /**
+     * 排版，包含其中的图片加载与字体解析
+     */
+    LAYOUT,
+    /**
+     * 绘制页面并写出 PDF
+     */
+    PDF,
+    /**
+     * 通过 {@link cc.ddrpa.motto.html.ResourcesUserAgent} 加载图片，是 {@link #LAYOUT} 与 {@link #PDF} 的一部分
+     */
+    IMAGE_LOAD,
+    /**
+     * 按需加载字体文件，是 {@link #LAYOUT} 的一部分
+     */
+    FONT_LOAD
+}
@@ -0,0 +1,97 @@
+package cc.ddrpa.motto.html;
+
+import static cc.ddrpa.motto.html.RenderFixtures.TABLE_TEMPLATE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cc.ddrpa.motto.html.RenderFixtures.SlowCounter;
+import cc.ddrpa.motto.html.metrics.RenderPhase;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class AsyncRenderTests {
+
+    @Test
+    void saveAsyncShouldCompleteTest() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DocumentBuilder builder = new DocumentBuilder()
+            .loadTemplateFromPlainText(TABLE_TEMPLATE)
+            .merge("rows", Collections.nCopies(10, "row"))
+            .merge("counter", new SlowCounter(0));
+        CompletableFuture<Void> future = builder.saveAsync(bos);
+        // 数据在调用时被复制
+        builder.reset();
+        future.get(30, TimeUnit.SECONDS);
+        assertTrue(bos.size() > 0);
+    }
+
+    @Test
+    void slowMergeShouldTimeOutTest() throws Exception {
+        SlowCounter counter = new SlowCounter(5);
+        long startedAt = System.nanoTime();
+        CompletableFuture<Void> future = new DocumentBuilder()
+            .setRenderTimeout(Duration.ofMillis(200))
+            .loadTemplateFromPlainText(TABLE_TEMPLATE)
+            .merge("rows", Collections.nCopies(2000, "row"))
+            .merge("counter", counter)
+            .saveAsync(new ByteArrayOutputStream());
+        ExecutionException e = assertThrows(ExecutionException.class,
+            () -> future.get(30, TimeUnit.SECONDS));
+        RenderTimeoutException timeout = assertInstanceOf(RenderTimeoutException.class,
+            e.getCause());
+        assertEquals(RenderPhase.MERGE, timeout.getPhase());
+        assertTrue(System.nanoTime() - startedAt < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(counter.calls() < 2000);
+    }
+
+    @Test
+    void longLayoutShouldTimeOutTest() throws Exception {
+        String template = "<html><body><p>$text</p></body></html>";
+        // 预热，避免首次渲染的类加载耗时计入解析阶段
+        new DocumentBuilder()
+            .loadTemplateFromPlainText(template)
+            .merge("text", "lorem ipsum")
+            .save(new ByteArrayOutputStream());
+        // 合并与解析很快，排版很长的段落需要大量测量文本宽度
+        DocumentRenderer renderer = new DocumentBuilder()
+            .setRenderTimeout(Duration.ofMillis(500))
+            .loadTemplateFromPlainText(template)
+            .buildRenderer();
+        String text = "lorem ipsum dolor sit amet ".repeat(20_000);
+        RenderTimeoutException e = assertThrows(RenderTimeoutException.class,
+            () -> renderer.render(Map.of("text", text), new ByteArrayOutputStream()));
+        assertTrue(e.getPhase() == RenderPhase.LAYOUT || e.getPhase() == RenderPhase.PDF,
+            e.getMessage());
+    }
+
+    @Test
+    void cancelledRenderShouldReleaseThreadTest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        SlowCounter counter = new SlowCounter(10);
+        DocumentRenderer renderer = new DocumentBuilder()
+            .loadTemplateFromPlainText(TABLE_TEMPLATE)
+            .buildRenderer();
+        CompletableFuture<Void> future = renderer.renderAsync(
+            Map.of("rows", Collections.nCopies(2000, "row"), "counter", counter),
+            new ByteArrayOutputStream(), executor);
+        Thread.sleep(200);
+        future.cancel(true);
+        // 线程在下一个检查点退出后可以执行其他任务
+        CompletableFuture<Void> next = renderer.renderAsync(
+            Map.of("rows", Collections.nCopies(10, "row"), "counter", new SlowCounter(0)),
+            new ByteArrayOutputStream(), executor);
+        next.get(10, TimeUnit.SECONDS);
+        assertTrue(counter.calls() < 2000);
+        executor.shutdown();
+    }
+}
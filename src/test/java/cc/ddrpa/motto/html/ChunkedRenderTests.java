@@ -0,0 +1,67 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.parser.PdfTextExtractor;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class ChunkedRenderTests {
+
+    private static final String TEMPLATE = """
+        <html><head><style>
+        @page { size: A6; @bottom-center { content: "Page " counter(page); } }
+        </style></head><body>
+        #if($chunkIndex == 0)<h1>Course records</h1>#end
+        <table>
+        #foreach($row in $rows)
+        <tr><td>$row.id()</td><td>$row.course()</td></tr>
+        #end
+        </table>
+        </body></html>
+        """;
+
+    @Test
+    void longTableShouldBeWrittenInChunksTest() throws Exception {
+        // 只能遍历一次的数据源
+        var rows = IntStream.range(0, 500)
+            .mapToObj(i -> new CourseRecord(i, "course-" + i, "online", 1, 100))
+            .iterator();
+        List<Integer> flushedSizes = new ArrayList<>();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                flushedSizes.add(size());
+            }
+        };
+        int chunks = new DocumentBuilder()
+            .loadTemplateFromPlainText(TEMPLATE)
+            .buildRenderer()
+            .renderChunked(Map.of("rows", rows), "rows", 100, bos);
+        assertEquals(5, chunks);
+        assertTrue(flushedSizes.size() >= 5);
+        // 第一段写完时数据已经交给了输出流
+        assertTrue(flushedSizes.stream().anyMatch(size -> size > 0 && size < bos.size() / 2));
+
+        PdfReader reader = new PdfReader(bos.toByteArray());
+        try {
+            int pages = reader.getNumberOfPages();
+            PdfTextExtractor extractor = new PdfTextExtractor(reader);
+            assertTrue(extractor.getTextFromPage(1).contains("Course records"));
+            String lastPage = extractor.getTextFromPage(pages);
+            assertTrue(lastPage.contains("course-499"));
+            assertFalse(lastPage.contains("Course records"));
+            // 页码跨段连续
+            assertTrue(lastPage.contains("Page " + pages));
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.lowagie.text.pdf.PdfDictionary;
+import com.lowagie.text.pdf.PdfName;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.parser.PdfTextExtractor;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class CombinedRenderTests {
+
+    private static final String TEMPLATE = """
+        <html><head><style>
+        @page { size: A6; @bottom-center { content: counter(page) " / " counter(pages); } }
+        </style></head><body>
+        <h1>$title</h1>
+        <p>Certificate #$index</p>
+        <img src="resources://avatar.jpeg" style="width: 20mm"/>
+        </body></html>
+        """;
+
+    @Test
+    void recordsShouldShareOnePdfTest() throws Exception {
+        List<Map<String, Object>> records = IntStream.range(0, 20)
+            .mapToObj(i -> Map.<String, Object>of("index", i))
+            .toList();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new DocumentBuilder()
+            .loadTemplateFromPlainText(TEMPLATE)
+            .merge("title", "Certificate")
+            .saveCombined(records, bos);
+        PdfReader reader = new PdfReader(bos.toByteArray());
+        try {
+            assertEquals(20, reader.getNumberOfPages());
+            String lastPage = new PdfTextExtractor(reader).getTextFromPage(20);
+            assertTrue(lastPage.contains("Certificate #19"));
+            // 每条数据的页码独立计算
+            assertTrue(lastPage.contains("1 / 1"));
+            int images = 0;
+            for (int i = 1; i < reader.getXrefSize(); i++) {
+                if (reader.getPdfObject(i) instanceof PdfDictionary dictionary
+                    && PdfName.IMAGE.equals(dictionary.get(PdfName.SUBTYPE))) {
+                    images++;
+                }
+            }
+            assertEquals(1, images);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    void rendererShouldRejectEmptyRecordsTest() throws Exception {
+        DocumentRenderer renderer = new DocumentBuilder()
+            .loadTemplateFromPlainText(TEMPLATE)
+            .buildRenderer();
+        assertThrows(IllegalArgumentException.class,
+            () -> renderer.renderCombined(List.of(), new ByteArrayOutputStream()));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        assertEquals(2, renderer.renderCombined(
+            List.of(Map.of("title", "a", "index", 0), Map.of("title", "b", "index", 1)), bos));
+        PdfReader reader = new PdfReader(bos.toByteArray());
+        assertEquals(2, reader.getNumberOfPages());
+        reader.close();
+    }
+}
@@ -0,0 +1,88 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.javafaker.Faker;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 展示在多个线程间共享同一个 {@link DocumentRenderer} 的方法
+ */
+public class DocumentRendererTests {
+
+    private final static Faker faker = new Faker();
+
+    static Map<String, Object> fakeRecord() {
+        return Map.of("name", faker.name().fullName(), "idCard", faker.idNumber().invalidSvSeSsn(),
+            "category", "吃瓜群众", "position", faker.job().position(), "education",
+            "有文化的人", "major", faker.educator().course(), "company",
+            faker.company().name() + "有限公司", "companyCode", "321123234679826ft34267XX",
+            "avatar", "resources://avatar.jpeg",
+            "all_course_records",
+            List.of(new CourseRecord(1, "课程名称1", "培训策略1", 11, 100),
+                new CourseRecord(2, "课程名称2", "培训策略2", 22, 98),
+                new CourseRecord(3, "课程名称3", "培训策略3", 33, 79)));
+    }
+
+    @Test
+    void concurrentRenderTest() throws Exception {
+        DocumentRenderer renderer = new DocumentBuilder()
+            .loadTemplate("record-template.html")
+            .setRenderPoolSize(4)
+            .buildRenderer();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> {
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    renderer.render(fakeRecord(), bos);
+                    return bos.toByteArray();
+                }));
+            }
+            for (Future<byte[]> future : futures) {
+                byte[] pdf = future.get();
+                assertTrue(new String(pdf, 0, 5, StandardCharsets.ISO_8859_1).startsWith("%PDF-"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(renderer.idleSlots() <= 4);
+    }
+
+    @Test
+    void renderBatchTest() {
+        DocumentRenderer renderer = new DocumentBuilder()
+            .loadTemplate("record-template.html")
+            .buildRenderer();
+        List<Map<String, Object>> records = IntStream.range(0, 8)
+            .mapToObj(i -> fakeRecord())
+            .toList();
+        BatchResult result = renderer.renderBatch(records, index -> {
+            if (index == 3) {
+                throw new IllegalStateException("no output for #3");
+            }
+            try {
+                return new FileOutputStream("target/batch-sample-" + index + ".pdf");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, 3);
+        assertEquals(8, result.total());
+        assertEquals(7, result.succeeded());
+        assertEquals(3, result.failures().get(0).index());
+    }
+}
@@ -0,0 +1,223 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cc.ddrpa.motto.html.embedded.EmbeddedImage;
+import cc.ddrpa.motto.html.embedded.EncodingProfile;
+import cc.ddrpa.motto.html.embedded.StorageMode;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.xhtmlrenderer.pdf.ITextOutputDevice;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.resource.ImageResource;
+
+public class EmbeddedImageTests {
+
+    private EmbeddedImage load(String name) throws IOException {
+        try (InputStream is = this.getClass().getClassLoader().getResourceAsStream(name)) {
+            return EmbeddedImage.newInstance(is);
+        }
+    }
+
+    @Test
+    void dataURLShouldBeEncodedOnceTest() throws IOException {
+        EmbeddedImage image = load("rhodes.png");
+        String first = image.toString();
+        assertTrue(first.startsWith("data:image/png;base64,"));
+        assertSame(first, image.toString());
+        assertSame(first, image.toDataURL());
+
+        image.scaleWithPoint(32, 32);
+        String scaled = image.toString();
+        assertNotEquals(first, scaled);
+        assertTrue(scaled.length() < first.length());
+        assertSame(scaled, image.toString());
+    }
+
+    @Test
+    void unscaledImageShouldPassThroughTest() throws IOException {
+        byte[] bytes;
+        try (InputStream is = this.getClass().getClassLoader()
+            .getResourceAsStream("avatar.jpeg")) {
+            bytes = is.readAllBytes();
+        }
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bytes));
+        EmbeddedImage image = EmbeddedImage.newInstance(bytes);
+        assertEquals(decoded.getWidth(), image.getWidth());
+        assertEquals(decoded.getHeight(), image.getHeight());
+        assertEquals("data:image/jpeg;base64," + Base64.getEncoder().encodeToString(bytes),
+            image.toDataURL());
+
+        image.scaleWithPoint(16, 16);
+        assertNotEquals(decoded.getWidth(), image.getWidth());
+        assertFalse(image.toDataURL().endsWith(Base64.getEncoder().encodeToString(bytes)));
+    }
+
+    @Test
+    void largeSourceShouldBeDecodedNearTargetSizeTest() throws IOException {
+        BufferedImage large = new BufferedImage(3000, 2000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = large.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, 3000, 2000, Color.BLUE));
+        graphics.fillRect(0, 0, 3000, 2000);
+        graphics.dispose();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageIO.write(large, "jpeg", bos);
+
+        EmbeddedImage image = EmbeddedImage.newInstance(bos.toByteArray())
+            .setDevicePixelRatio(2)
+            .scaleWithPoint(100, 60);
+        int expectedWidth = 2 * (int) Math.ceil(
+            100 * ITextRenderer.DEFAULT_DOTS_PER_POINT / ITextRenderer.DEFAULT_DOTS_PER_PIXEL);
+        int expectedHeight = 2 * (int) Math.ceil(
+            60 * ITextRenderer.DEFAULT_DOTS_PER_POINT / ITextRenderer.DEFAULT_DOTS_PER_PIXEL);
+        assertEquals(expectedWidth, image.getWidth());
+        assertEquals(expectedHeight, image.getHeight());
+        assertTrue(image.toDataURL().startsWith("data:image/jpeg;base64,"));
+    }
+
+    @Test
+    void encodingProfileTest() throws IOException {
+        BufferedImage opaque = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = opaque.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.RED, 400, 300, Color.GREEN));
+        graphics.fillRect(0, 0, 400, 300);
+        graphics.dispose();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageIO.write(opaque, "png", bos);
+        byte[] png = bos.toByteArray();
+
+        EmbeddedImage image = EmbeddedImage.newInstance(png);
+        assertTrue(image.toDataURL().startsWith("data:image/png;base64,"));
+        String small = image.setEncodingProfile(EncodingProfile.SMALL).toDataURL();
+        assertTrue(small.startsWith("data:image/jpeg;base64,"));
+        String fast = EmbeddedImage.newInstance(png)
+            .setEncodingProfile(EncodingProfile.FAST)
+            .toDataURL();
+        assertTrue(fast.startsWith("data:image/png;base64,"));
+        assertTrue(small.length() < fast.length());
+
+        EmbeddedImage.setDefaultEncodingProfile(EncodingProfile.SMALL);
+        try {
+            assertTrue(EmbeddedImage.newInstance(png).toDataURL()
+                .startsWith("data:image/jpeg;base64,"));
+        } finally {
+            EmbeddedImage.setDefaultEncodingProfile(EncodingProfile.DEFAULT);
+        }
+        // 含有 alpha 通道的图像不会被转换为 JPEG
+        assertTrue(load("rhodes.png").setEncodingProfile(EncodingProfile.SMALL).toDataURL()
+            .startsWith("data:image/png;base64,"));
+    }
+
+    @Test
+    void leanStorageModesShouldDecodeOnDemandTest() throws Exception {
+        byte[] jpeg;
+        try (InputStream is = this.getClass().getClassLoader()
+            .getResourceAsStream("avatar.jpeg")) {
+            jpeg = is.readAllBytes();
+        }
+        EmbeddedImage raster = EmbeddedImage.newInstance(jpeg).scaleWithPoint(40, 40);
+        for (StorageMode mode : new StorageMode[]{StorageMode.COMPRESSED, StorageMode.SPILL}) {
+            EmbeddedImage lean = EmbeddedImage.newInstance(jpeg)
+                .setStorageMode(mode)
+                .scaleWithPoint(40, 40);
+            assertEquals(raster.getWidth(), lean.getWidth());
+            assertEquals(raster.getHeight(), lean.getHeight());
+            String dataURL = lean.toDataURL();
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder()
+                .decode(dataURL.substring(dataURL.indexOf(',') + 1))));
+            assertEquals(raster.getWidth(), decoded.getWidth());
+            assertEquals(raster.getHeight(), decoded.getHeight());
+            assertNotNull(lean.toPdfImage());
+        }
+        // 从 BufferedImage 创建的图像会先编码为 PNG
+        EmbeddedImage fromRaster = EmbeddedImage.newInstance(
+                ImageIO.read(new ByteArrayInputStream(jpeg)))
+            .setStorageMode(StorageMode.SPILL)
+            .scaleWithPoint(20, 20)
+            .setStorageMode(StorageMode.RASTER);
+        assertEquals(raster.getWidth() / 2, fromRaster.getWidth());
+    }
+
+    @Test
+    void leanStorageModesShouldNotRetainEncodedDataTest() throws Exception {
+        for (StorageMode mode : new StorageMode[]{StorageMode.COMPRESSED, StorageMode.SPILL}) {
+            // 没有缩放的 JPEG 会直接使用原始数据
+            EmbeddedImage lean = load("avatar.jpeg").setStorageMode(mode);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            new DocumentBuilder()
+                .loadTemplateFromPlainText("<html><body><img src=\"$image\"/></body></html>")
+                .merge("image", lean)
+                .save(bos);
+            assertTrue(bos.size() > 0);
+            assertNotNull(lean.toDataURL());
+            assertNotSame(lean.toPdfImage(), lean.toPdfImage());
+            for (String field : new String[]{"pdfImage", "encoded", "dataURL"}) {
+                Field declared = EmbeddedImage.class.getDeclaredField(field);
+                declared.setAccessible(true);
+                assertNull(declared.get(lean), mode + " should not retain " + field);
+            }
+        }
+    }
+
+    @Test
+    void imagesShouldBeResolvedByHandleDuringRenderTest() throws Exception {
+        EmbeddedImage photo = load("avatar.jpeg").scaleWithMillimetre(20, 20);
+        EmbeddedImage transparent = load("rhodes.png").scaleWithMillimetre(20, 20);
+        for (boolean streamingMerge : new boolean[]{false, true}) {
+            ITextOutputDevice outputDevice = new ITextOutputDevice(
+                ITextRenderer.DEFAULT_DOTS_PER_POINT);
+            List<String> requested = new ArrayList<>();
+            List<ImageResource> resolved = new ArrayList<>();
+            ResourcesUserAgent userAgent = new ResourcesUserAgent(outputDevice,
+                ITextRenderer.DEFAULT_DOTS_PER_PIXEL) {
+                @Override
+                public ImageResource getImageResource(String uriStr) {
+                    requested.add(uriStr);
+                    ImageResource resource = super.getImageResource(uriStr);
+                    resolved.add(resource);
+                    return resource;
+                }
+            };
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            new DocumentBuilder(ITextRenderer.DEFAULT_DOTS_PER_POINT,
+                ITextRenderer.DEFAULT_DOTS_PER_PIXEL, outputDevice, userAgent)
+                .setStreamingMerge(streamingMerge)
+                .loadTemplateFromPlainText("""
+                    <html><body>
+                    <img src="$photo"/><img src="$transparent"/><img src="$photo"/>
+                    </body></html>
+                    """)
+                .merge("photo", photo)
+                .merge("transparent", transparent)
+                .save(bos);
+            assertEquals(3, requested.size());
+            assertTrue(requested.stream().allMatch(uri -> uri.startsWith("motto-img://")));
+            assertEquals(requested.get(0), requested.get(2));
+            resolved.forEach(resource -> assertNotNull(resource.getImage()));
+            assertTrue(new String(bos.toByteArray(), StandardCharsets.ISO_8859_1)
+                .contains("/DCTDecode"));
+        }
+        // 渲染之外仍然输出 data URL
+        assertTrue(photo.toString().startsWith("data:image/jpeg;base64,"));
+    }
+}
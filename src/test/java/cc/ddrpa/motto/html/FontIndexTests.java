@@ -0,0 +1,68 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cc.ddrpa.motto.html.FontRegistry.FontFile;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class FontIndexTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(FontIndexTests.class);
+
+    @Test
+    void indexRoundTripTest() throws IOException {
+        Path file = Path.of("target", "font-index", "round-trip.properties");
+        Files.deleteIfExists(file);
+        FontIndex index = FontIndex.load(file);
+        index.put("/fonts/a.ttc", new FontIndex.Entry(1024, 42, true, List.of(
+            new FontFile("/fonts/a.ttc,0", List.of("Family A", "家族 A")),
+            new FontFile("/fonts/a.ttc,1", List.of("Family B")))));
+        index.put("/fonts/broken.ttf", new FontIndex.Entry(10, 43, false, List.of()));
+        index.put("/fonts/removed.ttf", new FontIndex.Entry(10, 44, true, List.of()));
+        index.retainAll(Set.of("/fonts/a.ttc", "/fonts/broken.ttf"));
+        index.save();
+
+        FontIndex reloaded = FontIndex.load(file);
+        assertEquals(2, reloaded.size());
+        FontIndex.Entry entry = reloaded.lookup("/fonts/a.ttc", 1024, 42);
+        assertEquals(List.of("Family A", "家族 A"), entry.fonts().get(0).families());
+        assertEquals("/fonts/a.ttc,1", entry.fonts().get(1).path());
+        assertFalse(reloaded.lookup("/fonts/broken.ttf", 10, 43).loaded());
+        // 修改时间变化后记录失效
+        assertNull(reloaded.lookup("/fonts/a.ttc", 1024, 99));
+    }
+
+    @Test
+    void registeringSamePathTwiceShouldBeIgnoredTest() {
+        FontRegistry registry = new FontRegistry();
+        List<FontFile> files = List.of(new FontFile("/fonts/a.ttc,0", List.of("Family A")));
+        registry.register(files);
+        int generation = registry.generation();
+        registry.register(files);
+        registry.register(List.of(new FontFile("/fonts/a.ttc,0", List.of("Family A"))));
+        // 重复的路径不会再次加入解析器，也不会让渲染槽位重建解析器
+        assertEquals(generation, registry.generation());
+    }
+
+    @Test
+    void loadPreinstalledFontsWithIndexTest() {
+        Path file = Path.of("target", "font-index", "preinstalled.properties");
+        List<String> first = DocumentBuilder.loadPreinstalledFontsAsCJKFont(file);
+        long start = System.nanoTime();
+        List<String> second = DocumentBuilder.loadPreinstalledFontsAsCJKFont(file);
+        logger.info("Loaded {} fonts from index in {} ms", second.size(),
+            (System.nanoTime() - start) / 1_000_000);
+        assertEquals(first, second);
+        assertTrue(Files.isRegularFile(file));
+    }
+}
@@ -0,0 +1,84 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cc.ddrpa.motto.html.cache.CacheStats;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class ImageCacheTests {
+
+    private static final String TEMPLATE = """
+        <html><body>
+        <img src="resources://avatar.jpeg" style="width: 20mm"/>
+        <img src="$file" style="width: 20mm"/>
+        </body></html>
+        """;
+
+    @Test
+    void imagesShouldBeDecodedOnceAcrossRendersTest() throws Exception {
+        ResourcesUserAgent.setImageCacheSize(ResourcesUserAgent.DEFAULT_IMAGE_CACHE_BYTES);
+        String file = Path.of("src/test/resources/rhodes.png").toUri().toString();
+        for (int i = 0; i < 3; i++) {
+            // 每次使用新的 DocumentBuilder，即新的 ResourcesUserAgent 实例
+            new DocumentBuilder()
+                .loadTemplateFromPlainText(TEMPLATE)
+                .merge("file", file)
+                .save(new ByteArrayOutputStream());
+        }
+        CacheStats stats = ResourcesUserAgent.imageCacheStats();
+        assertEquals(2, stats.misses());
+        assertEquals(2, stats.size());
+        assertTrue(stats.hits() >= 4);
+        assertTrue(stats.weight() > 0);
+    }
+
+    @Test
+    void pdfAndFailedImagesShouldBeFetchedOnceTest() throws Exception {
+        ResourcesUserAgent.setImageCacheSize(ResourcesUserAgent.DEFAULT_IMAGE_CACHE_BYTES);
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        new DocumentBuilder()
+            .loadTemplateFromPlainText("<html><body><p>embedded</p></body></html>")
+            .save(pdf);
+        Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            requests.computeIfAbsent(path, ignored -> new AtomicInteger()).incrementAndGet();
+            if (path.equals("/document.pdf")) {
+                exchange.sendResponseHeaders(200, pdf.size());
+                exchange.getResponseBody().write(pdf.toByteArray());
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            for (int i = 0; i < 3; i++) {
+                new DocumentBuilder()
+                    .loadTemplateFromPlainText("""
+                        <html><body>
+                        <img src="$base/document.pdf" style="width: 20mm"/>
+                        <img src="$base/missing.png" style="width: 20mm"/>
+                        </body></html>
+                        """)
+                    .merge("base", base)
+                    .save(new ByteArrayOutputStream());
+            }
+        } finally {
+            server.stop(0);
+        }
+        // PDF 的内容与读取失败都被缓存，不会在每次渲染中重复请求
+        assertEquals(1, requests.get("/document.pdf").get());
+        assertEquals(1, requests.get("/missing.png").get());
+    }
+}
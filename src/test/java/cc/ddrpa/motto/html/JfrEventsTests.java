@@ -0,0 +1,68 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cc.ddrpa.motto.html.embedded.EmbeddedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+public class JfrEventsTests {
+
+    private static final String TEMPLATE = """
+        <html><body>
+        <img src="$avatar" style="width: 20mm"/>
+        <img src="resources://another-avatar.jpeg" style="width: 20mm"/>
+        </body></html>
+        """;
+
+    @Test
+    void renderShouldEmitFlightRecorderEventsTest() throws Exception {
+        Path file = Path.of("target", "jfr", "render.jfr");
+        Files.createDirectories(file.getParent());
+        try (Recording recording = new Recording()) {
+            for (String name : List.of("cc.ddrpa.motto.RenderPhase", "cc.ddrpa.motto.FontLoad",
+                "cc.ddrpa.motto.ImageFetch", "cc.ddrpa.motto.ImageProcess")) {
+                recording.enable(name).withoutThreshold();
+            }
+            recording.start();
+            DocumentBuilder.addFonts(List.of("target/jfr/missing-font.ttf"));
+            EmbeddedImage avatar;
+            try (FileInputStream fis = new FileInputStream("src/test/resources/rhodes.png")) {
+                avatar = EmbeddedImage.newInstance(fis).scaleWithPoint(64, 64);
+            }
+            new DocumentBuilder()
+                .loadTemplateFromPlainText(TEMPLATE)
+                .merge("avatar", avatar)
+                .save(new ByteArrayOutputStream());
+            recording.stop();
+            recording.dump(file);
+        }
+        Set<String> seen = new HashSet<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            String name = event.getEventType().getName();
+            if (name.equals("cc.ddrpa.motto.RenderPhase")) {
+                seen.add(name + "/" + event.getString("phase"));
+            } else if (name.equals("cc.ddrpa.motto.ImageProcess")) {
+                seen.add(name + "/" + event.getString("operation"));
+            } else {
+                seen.add(name);
+            }
+        }
+        for (String expected : List.of("cc.ddrpa.motto.RenderPhase/MERGE",
+            "cc.ddrpa.motto.RenderPhase/PARSE", "cc.ddrpa.motto.RenderPhase/LAYOUT",
+            "cc.ddrpa.motto.RenderPhase/PDF", "cc.ddrpa.motto.FontLoad",
+            "cc.ddrpa.motto.ImageFetch", "cc.ddrpa.motto.ImageProcess/decode",
+            "cc.ddrpa.motto.ImageProcess/scale")) {
+            assertTrue(seen.contains(expected), expected + " in " + seen);
+        }
+    }
+}
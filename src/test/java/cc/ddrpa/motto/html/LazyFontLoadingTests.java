@@ -0,0 +1,63 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class LazyFontLoadingTests {
+
+    private static final String TEMPLATE = """
+        <html><body><p style="font-family: 'DejaVu Serif'; font-weight: bold">$text</p></body></html>
+        """;
+
+    @Test
+    void lazyLoadAndEvictTest() throws Exception {
+        Path fonts = Path.of("/usr/share/fonts");
+        assumeTrue(Files.isDirectory(fonts), "system font directory is not available");
+        Path source;
+        try (Stream<Path> stream = Files.walk(fonts)) {
+            source = stream
+                .filter(file -> file.getFileName().toString().equals("DejaVuSerif-Bold.ttf"))
+                .findFirst()
+                .orElse(null);
+        }
+        assumeTrue(source != null, "DejaVuSerif-Bold.ttf is not installed");
+        Path font = Path.of("target", "lazy-font", "LazySerif-Bold.ttf");
+        Files.createDirectories(font.getParent());
+        Files.copy(source, font, StandardCopyOption.REPLACE_EXISTING);
+        String path = font.toString();
+        FontRegistry registry = DocumentBuilder.fontRegistry();
+
+        DocumentBuilder.setLazyFontLoading(true);
+        try {
+            DocumentBuilder.addFont(path);
+        } finally {
+            DocumentBuilder.setLazyFontLoading(false);
+        }
+        assertFalse(registry.isLoaded(path));
+        assertTrue(DocumentBuilder.listFontFamily().contains("DejaVu Serif"));
+
+        DocumentRenderer renderer = new DocumentBuilder()
+            .loadTemplateFromPlainText(TEMPLATE)
+            .buildRenderer();
+        renderer.render(Map.of("text", "first"), new ByteArrayOutputStream());
+        assertTrue(registry.isLoaded(path));
+
+        DocumentBuilder.evictUnusedFonts(Duration.ofHours(1));
+        assertTrue(registry.isLoaded(path));
+        assertTrue(DocumentBuilder.evictUnusedFonts(Duration.ZERO) > 0);
+        assertFalse(registry.isLoaded(path));
+
+        renderer.render(Map.of("text", "second"), new ByteArrayOutputStream());
+        assertTrue(registry.isLoaded(path));
+    }
+}
@@ -0,0 +1,349 @@
+package cc.ddrpa.motto.html;
+
+import com.github.javafaker.Faker;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 长时间持续负载下的吞吐量与延迟
+ * <p>
+ * 多个线程共享 {@link DocumentRenderer}，在固定时间内轮流渲染几种不同的模版，统计吞吐量、延迟分布、工作线程的分配速率、
+ * 堆内存峰值与 GC 次数，结果写入 JSON 文件以便在版本之间比较。通过系统属性配置：
+ * <ul>
+ *     <li>{@code motto.load.duration}：测量时长，秒，默认 60</li>
+ *     <li>{@code motto.load.warmup}：预热时长，秒，默认 15，预热期间的数据不计入结果</li>
+ *     <li>{@code motto.load.concurrency}：并发渲染的线程数，默认为 CPU 核数</li>
+ *     <li>{@code motto.load.output}：结果文件，默认写入 target/load-results</li>
+ * </ul>
+ * <pre>
+ * ./mvnw test-compile exec:java -Dexec.mainClass=cc.ddrpa.motto.html.LoadHarness \
+ *     -Dexec.classpathScope=test -Dmotto.load.duration=300
+ * </pre>
+ */
+public class LoadHarness {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadHarness.class);
+
+    /**
+     * 最长可记录的延迟，微秒
+     */
+    private static final long HIGHEST_LATENCY_MICROS = Duration.ofMinutes(5).toNanos() / 1000;
+
+    private static final String CERTIFICATE_TEMPLATE = """
+        <html><head><style>
+        @page { size: A5 landscape; }
+        body { font-family: 'Noto Serif SC', serif; text-align: center; }
+        </style></head><body>
+        <h1>结业证书</h1>
+        <p>$name 于 $date 完成了 $course 的全部课程。</p>
+        <p>$company</p>
+        </body></html>
+        """;
+
+    private static final String TABLE_TEMPLATE = """
+        <html><head><style>
+        @page { size: A4; @bottom-center { content: counter(page) " / " counter(pages); } }
+        body { font-family: 'Noto Sans SC', sans-serif; font-size: 9pt; }
+        table { width: 100%; border-collapse: collapse; }
+        td { border: 1px solid #999; }
+        </style></head><body>
+        <h2>$company 培训记录</h2>
+        <table>
+        #foreach($row in $all_course_records)
+        <tr><td>$row.id()</td><td>$row.course()</td><td>$row.trainingMethod()</td>
+        <td>$row.trainingHours()</td><td>$row.score()</td></tr>
+        #end
+        </table>
+        </body></html>
+        """;
+
+    private static final List<String> FONTS = List.of(
+        "font-seems-okay/Noto_Sans_SC/static/NotoSansSC-Regular.ttf",
+        "font-seems-okay/Noto_Serif_SC/static/NotoSerifSC-Regular.ttf");
+
+    /**
+     * 负载的配置
+     *
+     * @param duration    测量时长
+     * @param warmup      预热时长
+     * @param concurrency 并发渲染的线程数
+     * @param output      结果文件
+     */
+    public record Config(Duration duration, Duration warmup, int concurrency, Path output) {
+
+        static Config fromSystemProperties() {
+            String timestamp = LocalDateTime.now()
+                .format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            return new Config(
+                Duration.ofSeconds(Long.getLong("motto.load.duration", 60)),
+                Duration.ofSeconds(Long.getLong("motto.load.warmup", 15)),
+                Integer.getInteger("motto.load.concurrency",
+                    Runtime.getRuntime().availableProcessors()),
+                Path.of(System.getProperty("motto.load.output",
+                    "target/load-results/load-" + timestamp + ".json")));
+        }
+    }
+
+    /**
+     * 一种模版的负载
+     */
+    private record Workload(String name, DocumentRenderer renderer,
+                            List<Map<String, Object>> records, Histogram latency,
+                            AtomicLong errors) {
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.fromSystemProperties();
+        String result = run(config);
+        logger.info("Load test finished, results written to {}", config.output());
+        System.out.println(result);
+    }
+
+    /**
+     * 运行负载并写出结果
+     *
+     * @param config 负载的配置
+     * @return 写入结果文件的 JSON
+     */
+    public static String run(Config config) throws Exception {
+        DocumentBuilder.addFonts(FONTS.stream().filter(path -> Files.isRegularFile(Path.of(path)))
+            .toList());
+        Faker faker = new Faker();
+        List<Workload> workloads = List.of(
+            workload("record", new DocumentBuilder().loadTemplate("record-template.html"),
+                faker, 3, 20),
+            workload("certificate",
+                new DocumentBuilder().loadTemplateFromPlainText(CERTIFICATE_TEMPLATE), faker, 0, 0),
+            workload("table", new DocumentBuilder().loadTemplateFromPlainText(TABLE_TEMPLATE),
+                faker, 100, 300));
+
+        logger.info("Warming up for {} with {} threads", config.warmup(), config.concurrency());
+        drive(workloads, config.concurrency(), config.warmup(), null);
+        workloads.forEach(workload -> {
+            workload.latency().reset();
+            workload.errors().set(0);
+        });
+
+        logger.info("Measuring for {} with {} threads", config.duration(), config.concurrency());
+        HeapSampler heap = new HeapSampler();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        heap.start();
+        AtomicLong allocated = new AtomicLong();
+        long startedAt = System.nanoTime();
+        drive(workloads, config.concurrency(), config.duration(), allocated);
+        double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+        heap.interrupt();
+        heap.join();
+
+        Histogram total = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        long errors = 0;
+        for (Workload workload : workloads) {
+            total.add(workload.latency());
+            errors += workload.errors().get();
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"timestamp\": \"").append(LocalDateTime.now()).append("\",\n");
+        json.append("  \"javaVersion\": \"").append(System.getProperty("java.version"))
+            .append("\",\n");
+        json.append("  \"config\": {\"durationSeconds\": ").append(config.duration().toSeconds())
+            .append(", \"warmupSeconds\": ").append(config.warmup().toSeconds())
+            .append(", \"concurrency\": ").append(config.concurrency())
+            .append(", \"maxHeapBytes\": ").append(Runtime.getRuntime().maxMemory())
+            .append("},\n");
+        json.append("  \"completed\": ").append(total.getTotalCount()).append(",\n");
+        json.append("  \"errors\": ").append(errors).append(",\n");
+        json.append("  \"throughputPerSecond\": ")
+            .append(format(total.getTotalCount() / elapsedSeconds)).append(",\n");
+        json.append("  \"latencyMillis\": ").append(latency(total)).append(",\n");
+        json.append("  \"workloads\": {\n");
+        for (int i = 0; i < workloads.size(); i++) {
+            Workload workload = workloads.get(i);
+            json.append("    \"").append(workload.name()).append("\": {\"completed\": ")
+                .append(workload.latency().getTotalCount())
+                .append(", \"errors\": ").append(workload.errors().get())
+                .append(", \"latencyMillis\": ").append(latency(workload.latency()))
+                .append(i < workloads.size() - 1 ? "},\n" : "}\n");
+        }
+        json.append("  },\n");
+        json.append("  \"allocationBytesPerSecond\": ")
+            .append(format(allocated.get() / elapsedSeconds)).append(",\n");
+        json.append("  \"peakHeapBytes\": ").append(heap.peak()).append(",\n");
+        json.append("  \"gcCount\": ").append(gcCount() - gcCountBefore).append(",\n");
+        json.append("  \"gcTimeMillis\": ").append(gcTime() - gcTimeBefore).append("\n");
+        json.append("}\n");
+
+        String result = json.toString();
+        if (config.output().getParent() != null) {
+            Files.createDirectories(config.output().getParent());
+        }
+        Files.writeString(config.output(), result, StandardCharsets.UTF_8);
+        return result;
+    }
+
+    private static Workload workload(String name, DocumentBuilder builder, Faker faker,
+        int minRows, int maxRows) {
+        // 预先生成数据，避免 Faker 的开销计入渲染延迟
+        List<Map<String, Object>> records = IntStream.range(0, 200)
+            .mapToObj(i -> fakeRecord(faker, minRows + (maxRows > minRows
+                ? faker.random().nextInt(maxRows - minRows) : 0)))
+            .toList();
+        return new Workload(name, builder.buildRenderer(), records,
+            new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3), new AtomicLong());
+    }
+
+    private static Map<String, Object> fakeRecord(Faker faker, int rows) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("name", faker.name().fullName());
+        record.put("idCard", faker.idNumber().invalidSvSeSsn());
+        record.put("category", "吃瓜群众");
+        record.put("position", faker.job().position());
+        record.put("education", "有文化的人");
+        record.put("major", faker.educator().course());
+        record.put("company", faker.company().name() + "有限公司");
+        record.put("companyCode", "321123234679826ft34267XX");
+        record.put("avatar", "resources://avatar.jpeg");
+        record.put("course", faker.educator().course());
+        record.put("date", faker.date().birthday().toString());
+        record.put("all_course_records", IntStream.rangeClosed(1, rows)
+            .mapToObj(i -> new CourseRecord(i, faker.educator().course(), "线上培训",
+                faker.random().nextInt(1, 40), faker.random().nextInt(60, 100)))
+            .toList());
+        return record;
+    }
+
+    /**
+     * 在给定时间内持续渲染，每个线程轮流使用不同的模版
+     *
+     * @param allocated 累计工作线程分配的字节数，为 null 时不统计
+     */
+    private static void drive(List<Workload> workloads, int concurrency, Duration duration,
+        AtomicLong allocated) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        List<Thread> threads = new ArrayList<>(concurrency);
+        for (int t = 0; t < concurrency; t++) {
+            int offset = t;
+            Thread thread = new Thread(() -> {
+                long allocatedBefore = allocatedBytes();
+                try {
+                    for (long i = offset; System.nanoTime() < deadline; i++) {
+                        Workload workload = workloads.get((int) (i % workloads.size()));
+                        Map<String, Object> record = workload.records()
+                            .get((int) (i % workload.records().size()));
+                        long startedAt = System.nanoTime();
+                        try {
+                            workload.renderer().render(record, OutputStream.nullOutputStream());
+                            workload.latency().recordValue(
+                                Math.min(HIGHEST_LATENCY_MICROS,
+                                    (System.nanoTime() - startedAt) / 1000));
+                        } catch (RuntimeException e) {
+                            workload.errors().incrementAndGet();
+                            logger.warn("Render of {} failed because {}", workload.name(),
+                                e.getMessage());
+                        }
+                    }
+                } finally {
+                    if (allocated != null) {
+                        allocated.addAndGet(allocatedBytes() - allocatedBefore);
+                    }
+                    done.countDown();
+                }
+            }, "motto-load-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        done.await();
+    }
+
+    private static long allocatedBytes() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+            ? bean.getCurrentThreadAllocatedBytes()
+            : 0;
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+            .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(count -> count > 0)
+            .sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+            .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(time -> time > 0)
+            .sum();
+    }
+
+    private static String latency(Histogram histogram) {
+        return String.format(Locale.ROOT,
+            "{\"mean\": %s, \"p50\": %s, \"p90\": %s, \"p99\": %s, \"p99.9\": %s, \"max\": %s}",
+            format(histogram.getMean() / 1000),
+            millis(histogram.getValueAtPercentile(50)),
+            millis(histogram.getValueAtPercentile(90)),
+            millis(histogram.getValueAtPercentile(99)),
+            millis(histogram.getValueAtPercentile(99.9)),
+            millis(histogram.getMaxValue()));
+    }
+
+    private static String millis(long micros) {
+        return format(micros / 1000.0);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * 定期采样堆内存的使用量，记录峰值
+     */
+    private static class HeapSampler extends Thread {
+
+        private volatile long peak;
+
+        HeapSampler() {
+            super("motto-load-heap-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+                if (used > peak) {
+                    peak = used;
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long peak() {
+            return peak;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 用很短的时间运行 {@link LoadHarness}，确保它可以正常工作
+ */
+public class LoadHarnessTests {
+
+    @Test
+    void shortLoadRunShouldWriteResultsTest() throws Exception {
+        Path output = Path.of("target", "load-results", "smoke.json");
+        String result = LoadHarness.run(
+            new LoadHarness.Config(Duration.ofSeconds(2), Duration.ofSeconds(1), 2, output));
+        assertTrue(Files.exists(output));
+        assertTrue(result.contains("\"errors\": 0,"), result);
+        assertTrue(result.contains("\"p99.9\""));
+        assertTrue(result.matches("(?s).*\"completed\": [1-9].*"), result);
+    }
+}
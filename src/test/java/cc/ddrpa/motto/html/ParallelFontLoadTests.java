@@ -0,0 +1,48 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ParallelFontLoadTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelFontLoadTests.class);
+
+    @Test
+    void addFontsTest() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (Path directory : PathResolver.preinstalledFontPaths()) {
+            try (Stream<Path> stream = Files.walk(directory)) {
+                stream.filter(file -> file.toString().toLowerCase().endsWith(".ttf"))
+                    .limit(4)
+                    .forEach(file -> paths.add(file.toString()));
+            }
+        }
+        paths.add("target/not-a-font.ttf");
+        paths.add("target/not-a-font.woff");
+
+        FontLoadReport report = DocumentBuilder.addFonts(paths, 4);
+        report.files().forEach(file -> logger.info("{} {} ms {}", file.path(),
+            file.elapsed().toMillis(), file.isLoaded() ? file.families() : file.failure().getMessage()));
+
+        assertEquals(paths.size(), report.files().size());
+        assertEquals(paths, report.files().stream().map(FontLoadReport.FileResult::path).toList());
+        assertEquals(2, report.failures().size());
+        assertEquals(paths.size() - 2, report.loaded().size());
+        for (FontLoadReport.FileResult file : report.files()) {
+            if (file.isLoaded()) {
+                assertFalse(file.families().isEmpty());
+                assertTrue(DocumentBuilder.listFontFamily().containsAll(file.families()));
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package cc.ddrpa.motto.html;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 渲染相关测试共用的模版与数据
+ */
+final class RenderFixtures {
+
+    /**
+     * 每行一个单元格的表格，数据中有 {@code counter} 时每行调用一次 {@link SlowCounter#next()}
+     */
+    static final String TABLE_TEMPLATE = """
+        <html><body><table>
+        #foreach($row in $rows)
+        <tr><td>$row $!counter.next()</td><td>lorem ipsum dolor sit amet consectetur</td></tr>
+        #end
+        </table></body></html>
+        """;
+
+    private RenderFixtures() {
+    }
+
+    /**
+     * 记录模版调用的次数，每次调用前等待指定的时间
+     */
+    public static class SlowCounter {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private final long delayMillis;
+
+        SlowCounter(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        public int next() throws InterruptedException {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            return calls.incrementAndGet();
+        }
+
+        int calls() {
+            return calls.get();
+        }
+
+        long delayMillis() {
+            return delayMillis;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package cc.ddrpa.motto.html;
+
+import static cc.ddrpa.motto.html.RenderFixtures.TABLE_TEMPLATE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cc.ddrpa.motto.html.RenderLimitExceededException.Limit;
+import cc.ddrpa.motto.html.cache.ResultStore;
+import cc.ddrpa.motto.html.embedded.EmbeddedImage;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+
+public class RenderLimitsTests {
+
+    @Test
+    void mergedHtmlShouldBeLimitedTest() throws Exception {
+        DocumentRenderer renderer = new DocumentBuilder()
+            .setMaxHtmlChars(4096)
+            .loadTemplateFromPlainText(TABLE_TEMPLATE)
+            .buildRenderer();
+        RenderLimitExceededException e = assertThrows(RenderLimitExceededException.class,
+            () -> renderer.render(Map.of("rows", Collections.nCopies(100_000, "row")),
+                new ByteArrayOutputStream()));
+        assertEquals(Limit.HTML_CHARS, e.getLimit());
+        assertEquals(4096, e.getMaximum());
+        // 超出后立即停止合并
+        assertTrue(e.getActual() < 8192);
+    }
+
+    @Test
+    void pagesShouldBeLimitedBeforeWritingTest() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DocumentBuilder builder = new DocumentBuilder()
+            .setMaxPages(2)
+            .loadTemplateFromPlainText(TABLE_TEMPLATE)
+            .merge("rows", Collections.nCopies(500, "row"));
+        RenderLimitExceededException e = assertThrows(RenderLimitExceededException.class,
+            () -> builder.save(bos));
+        assertEquals(Limit.PAGES, e.getLimit());
+        assertTrue(e.getActual() > 2);
+        assertEquals(0, bos.size());
+    }
+
+    @Test
+    void outputShouldBeLimitedTest() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DocumentBuilder builder = new DocumentBuilder()
+            .setMaxOutputBytes(4096)
+            .loadTemplateFromPlainText(TABLE_TEMPLATE)
+            .merge("rows", Collections.nCopies(500, "row"));
+        RenderLimitExceededException e = assertThrows(RenderLimitExceededException.class,
+            () -> builder.save(bos));
+        assertEquals(Limit.OUTPUT_BYTES, e.getLimit());
+        assertTrue(bos.size() <= 4096);
+    }
+
+    @Test
+    void cachedResultsShouldRespectLimitsTest() throws Exception {
+        RenderResultCache cache = RenderResultCache.newInstance(
+            ResultStore.memory(16 * 1024 * 1024, null));
+        Map<String, Object> data = Map.of("rows", Collections.nCopies(500, "row"));
+        ByteArrayOutputStream unlimited = new ByteArrayOutputStream();
+        new DocumentBuilder()
+            .setResultCache(cache)
+            .loadTemplateFromPlainText(TABLE_TEMPLATE)
+            .buildRenderer()
+            .render(data, unlimited);
+        // 不同上限的渲染不共享结果
+        DocumentRenderer limited = new DocumentBuilder()
+            .setResultCache(cache)
+            .setMaxPages(2)
+            .loadTemplateFromPlainText(TABLE_TEMPLATE)
+            .buildRenderer();
+        RenderLimitExceededException e = assertThrows(RenderLimitExceededException.class,
+            () -> limited.render(data, new ByteArrayOutputStream()));
+        assertEquals(Limit.PAGES, e.getLimit());
+        assertEquals(0, cache.stats().hits());
+        // 从缓存输出时同样检查输出的字节数
+        DocumentRenderer small = new DocumentBuilder()
+            .setResultCache(cache)
+            .setMaxOutputBytes(unlimited.size() - 1)
+            .loadTemplateFromPlainText(TABLE_TEMPLATE)
+            .buildRenderer();
+        for (int i = 0; i < 2; i++) {
+            e = assertThrows(RenderLimitExceededException.class,
+                () -> small.render(data, new ByteArrayOutputStream()));
+            assertEquals(Limit.OUTPUT_BYTES, e.getLimit());
+        }
+    }
+
+    @Test
+    void imagePixelsShouldBeLimitedTest() throws Exception {
+        Path file = Path.of("target", "render-limits", "large.png");
+        Files.createDirectories(file.getParent());
+        ImageIO.write(new BufferedImage(2000, 1500, BufferedImage.TYPE_INT_RGB), "png",
+            file.toFile());
+        String template = "<html><body><img src=\"$src\"/></body></html>";
+        DocumentRenderer limited = new DocumentBuilder()
+            .setMaxImagePixels(1_000_000)
+            .loadTemplateFromPlainText(template)
+            .buildRenderer();
+
+        RenderLimitExceededException e = assertThrows(RenderLimitExceededException.class,
+            () -> limited.render(Map.of("src", file.toUri().toString()),
+                new ByteArrayOutputStream()));
+        assertEquals(Limit.IMAGE_PIXELS, e.getLimit());
+        assertEquals(3_000_000, e.getActual());
+
+        EmbeddedImage embedded = EmbeddedImage.newInstance(Files.readAllBytes(file));
+        e = assertThrows(RenderLimitExceededException.class,
+            () -> limited.render(Map.of("src", embedded), new ByteArrayOutputStream()));
+        assertEquals(Limit.IMAGE_PIXELS, e.getLimit());
+
+        // 没有上限的渲染不受影响
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new DocumentBuilder()
+            .loadTemplateFromPlainText(template)
+            .merge("src", file.toUri().toString())
+            .save(bos);
+        assertTrue(bos.size() > 0);
+        // 缓存中的图片同样受上限约束
+        assertThrows(RenderLimitExceededException.class,
+            () -> limited.render(Map.of("src", file.toUri().toString()),
+                new ByteArrayOutputStream()));
+    }
+}
@@ -0,0 +1,81 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cc.ddrpa.motto.html.metrics.MicrometerRenderListener;
+import cc.ddrpa.motto.html.metrics.RenderMetrics;
+import cc.ddrpa.motto.html.metrics.RenderPhase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class RenderMetricsTests {
+
+    private static final String TEMPLATE = """
+        <html><body>
+        <h1>$title</h1>
+        <img src="resources://avatar.jpeg" style="width: 20mm"/>
+        </body></html>
+        """;
+
+    @Test
+    void listenerShouldReceivePhaseTimingsTest() throws Exception {
+        for (boolean streamingMerge : new boolean[]{false, true}) {
+            List<RenderMetrics> received = new ArrayList<>();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            new DocumentBuilder()
+                .loadTemplateFromPlainText(TEMPLATE)
+                .setStreamingMerge(streamingMerge)
+                .setRenderListener(received::add)
+                .merge("title", "Metrics")
+                .save(bos);
+            assertEquals(1, received.size());
+            RenderMetrics metrics = received.get(0);
+            for (RenderPhase phase : List.of(RenderPhase.MERGE, RenderPhase.PARSE,
+                RenderPhase.LAYOUT, RenderPhase.PDF, RenderPhase.IMAGE_LOAD)) {
+                assertTrue(metrics.phase(phase).compareTo(Duration.ZERO) > 0, phase.name());
+            }
+            assertTrue(metrics.total().compareTo(metrics.phase(RenderPhase.LAYOUT)) > 0);
+            assertTrue(metrics.htmlChars() > TEMPLATE.length() / 2);
+            assertEquals(1, metrics.pages());
+            assertEquals(bos.size(), metrics.outputBytes());
+            assertTrue(metrics.imageCacheHits() + metrics.imageCacheMisses() > 0);
+        }
+    }
+
+    @Test
+    void combinedRenderShouldReportEachRecordTest() throws Exception {
+        List<RenderMetrics> received = new ArrayList<>();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new DocumentBuilder()
+            .loadTemplateFromPlainText(TEMPLATE)
+            .setRenderListener(received::add)
+            .buildRenderer()
+            .renderCombined(List.of(Map.of("title", "a"), Map.of("title", "b"),
+                Map.of("title", "c")), bos);
+        assertEquals(3, received.size());
+        assertEquals(bos.size(),
+            received.stream().mapToLong(RenderMetrics::outputBytes).sum());
+    }
+
+    @Test
+    void micrometerAdapterShouldRecordMetersTest() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DocumentRenderer renderer = new DocumentBuilder()
+            .loadTemplateFromPlainText(TEMPLATE)
+            .setRenderListener(new MicrometerRenderListener(registry))
+            .buildRenderer();
+        for (int i = 0; i < 2; i++) {
+            renderer.render(Map.of("title", "record " + i), new ByteArrayOutputStream());
+        }
+        assertEquals(2, registry.get("motto.render").timer().count());
+        assertEquals(2, registry.get("motto.render.phase").tag("phase", "layout").timer().count());
+        assertEquals(2, registry.get("motto.render.pages").summary().totalAmount());
+        assertTrue(registry.get("motto.render.output.size").summary().totalAmount() > 0);
+    }
+}
@@ -0,0 +1,241 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cc.ddrpa.motto.html.RenderFixtures.SlowCounter;
+import cc.ddrpa.motto.html.cache.ResultStore;
+import cc.ddrpa.motto.html.cache.StableDataHasher;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class RenderResultCacheTests {
+
+    private static final String TEMPLATE = """
+        <html><body><p>$name</p><p>$counter.next()</p></body></html>
+        """;
+
+    @Test
+    void identicalInputsShouldRenderOnceTest() throws Exception {
+        RenderResultCache cache = newCache();
+        SlowCounter counter = new SlowCounter(0);
+        byte[] first = save(cache, "Alice", counter);
+        byte[] second = save(cache, "Alice", counter);
+        byte[] other = save(cache, "Bob", counter);
+        assertArrayEquals(first, second);
+        assertFalse(Arrays.equals(first, other));
+        assertEquals(2, counter.calls());
+        RenderResultCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+    }
+
+    @Test
+    void concurrentIdenticalRequestsShouldShareOneRenderTest() throws Exception {
+        RenderResultCache cache = newCache();
+        DocumentRenderer renderer = new DocumentBuilder()
+            .loadTemplateFromPlainText(TEMPLATE)
+            .setResultCache(cache)
+            .buildRenderer();
+        SlowCounter counter = new SlowCounter(300);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                renderer.render(Map.of("name", "Alice", "counter", counter), bos);
+                return bos.toByteArray();
+            }));
+        }
+        start.countDown();
+        byte[] expected = results.get(0).get();
+        for (Future<byte[]> result : results) {
+            assertArrayEquals(expected, result.get());
+        }
+        executor.shutdown();
+        assertEquals(1, counter.calls());
+        RenderResultCache.Stats stats = cache.stats();
+        assertEquals(1, stats.misses());
+        assertEquals(threads - 1, stats.hits() + stats.shared());
+    }
+
+    @Test
+    void failedSharedRenderShouldNotRunForEveryWaiterTest() throws Exception {
+        RenderResultCache cache = RenderResultCache.newInstance(
+                ResultStore.memory(16 * 1024 * 1024, null))
+            .setHasher(data -> "failing");
+        DocumentRenderer renderer = new DocumentBuilder()
+            .loadTemplateFromPlainText(TEMPLATE)
+            .setResultCache(cache)
+            .buildRenderer();
+        FailingCounter counter = new FailingCounter();
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                renderer.render(Map.of("name", "Alice", "counter", counter),
+                    new ByteArrayOutputStream());
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            assertThrows(ExecutionException.class, result::get);
+        }
+        executor.shutdown();
+        // 等待的请求直接得到同样的错误，不会各自重新渲染
+        assertTrue(counter.calls.get() <= 2, "rendered " + counter.calls.get() + " times");
+    }
+
+    @Test
+    void waitingForSharedRenderShouldRespectTimeoutTest() throws Exception {
+        RenderResultCache cache = newCache();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<byte[]> leader = executor.submit(() -> save(cache, "Alice", new SlowCounter(2000)));
+        Thread.sleep(300);
+        long startedAt = System.nanoTime();
+        // 相同的渲染仍在进行，等待的请求按自己的时限失败
+        DocumentBuilder waiter = new DocumentBuilder()
+            .setResultCache(cache)
+            .setRenderTimeout(Duration.ofMillis(200))
+            .loadTemplateFromPlainText(TEMPLATE)
+            .merge("name", "Alice")
+            .merge("counter", new SlowCounter(0));
+        assertThrows(RenderTimeoutException.class, () -> waiter.save(new ByteArrayOutputStream()));
+        assertTrue(System.nanoTime() - startedAt < TimeUnit.MILLISECONDS.toNanos(1500));
+        assertTrue(leader.get().length > 0);
+        executor.shutdown();
+    }
+
+    @Test
+    void unsupportedDataShouldSkipCacheTest() throws Exception {
+        StableDataHasher hasher = new StableDataHasher();
+        Map<String, Object> ordered = new LinkedHashMap<>();
+        ordered.put("a", List.of(1, "x", LocalDate.of(2024, 1, 1)));
+        ordered.put("b", Set.of("p", "q"));
+        Map<String, Object> reversed = new LinkedHashMap<>();
+        reversed.put("b", Set.of("q", "p"));
+        reversed.put("a", List.of(1, "x", LocalDate.of(2024, 1, 1)));
+        assertEquals(hasher.hash(ordered), hasher.hash(reversed));
+        assertNotEquals(hasher.hash(ordered), hasher.hash(Map.of("a", List.of(1L, "x"))));
+        assertEquals(hasher.hash(Map.of("course", new CourseRecord(1, "Math", "online", 3, 90))),
+            hasher.hash(Map.of("course", new CourseRecord(1, "Math", "online", 3, 90))));
+        assertNull(hasher.hash(Map.of("counter", new SlowCounter(0))));
+        assertNotNull(new StableDataHasher()
+            .register(SlowCounter.class, counter -> counter.delayMillis())
+            .hash(Map.of("counter", new SlowCounter(0))));
+
+        RenderResultCache cache = newCache();
+        SlowCounter counter = new SlowCounter(0);
+        cache.setHasher(data -> null);
+        save(cache, "Alice", counter);
+        save(cache, "Alice", counter);
+        assertEquals(2, counter.calls());
+        assertEquals(2, cache.stats().uncacheable());
+    }
+
+    @Test
+    void oneShotIterablesShouldSkipCacheTest() throws Exception {
+        RenderResultCache cache = newCache();
+        DocumentRenderer renderer = new DocumentBuilder()
+            .loadTemplateFromPlainText(
+                "<html><body>#foreach($row in $rows)<p>$row</p>#end</body></html>")
+            .setResultCache(cache)
+            .buildRenderer();
+        Stream<String> stream = Stream.of("a", "b", "c");
+        Iterable<String> rows = stream::iterator;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        // 计算摘要时不能消费只能遍历一次的数据
+        renderer.render(Map.of("rows", rows), bos);
+        assertTrue(bos.size() > 0);
+        assertEquals(1, cache.stats().uncacheable());
+        assertNull(new StableDataHasher().hash(Map.of("rows", List.of("a").iterator())));
+    }
+
+    @Test
+    void storesShouldEvictExpiredAndLeastRecentlyUsedResultsTest() throws Exception {
+        ResultStore memory = ResultStore.memory(1024, Duration.ofMillis(50));
+        memory.put("a", new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, memory.get("a"));
+        Thread.sleep(100);
+        assertNull(memory.get("a"));
+
+        Path directory = Files.createTempDirectory("motto-result-cache");
+        Path stale = Files.createFile(directory.resolve("left-over.tmp"));
+        ResultStore disk = ResultStore.disk(directory, 10, null);
+        disk.put("a", new byte[6]);
+        disk.put("b", new byte[6]);
+        assertNull(disk.get("a"));
+        assertNotNull(disk.get("b"));
+        assertFalse(Files.exists(stale));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        // 重新打开目录时沿用已有的结果
+        assertNotNull(ResultStore.disk(directory, 10, null).get("b"));
+        disk.invalidateAll();
+        assertNull(ResultStore.disk(directory, 10, null).get("b"));
+    }
+
+    private static byte[] save(RenderResultCache cache, String name, SlowCounter counter)
+        throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new DocumentBuilder()
+            .setResultCache(cache)
+            .loadTemplateFromPlainText(TEMPLATE)
+            .merge("name", name)
+            .merge("counter", counter)
+            .save(bos);
+        return bos.toByteArray();
+    }
+
+    private static RenderResultCache newCache() {
+        // 模版调用次数不参与摘要计算
+        return RenderResultCache.newInstance(ResultStore.memory(16 * 1024 * 1024, null))
+            .setHasher(new StableDataHasher().register(SlowCounter.class, counter -> "counter"));
+    }
+
+    /**
+     * 每次调用都在等待后失败
+     */
+    public static class FailingCounter {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        public int next() throws InterruptedException {
+            calls.incrementAndGet();
+            Thread.sleep(300);
+            throw new IllegalStateException("broken data");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.apache.velocity.exception.MethodInvocationException;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 展示以流式方式合并模版生成较大文档的方法
+ */
+public class StreamingMergeTests {
+
+    @Test
+    void largeRecordTableTest() throws IOException {
+        List<CourseRecord> records = IntStream.range(0, 2000)
+            .mapToObj(i -> new CourseRecord(i, "课程名称" + i, "培训策略" + i, i % 40, i % 100))
+            .toList();
+        DocumentBuilder builder = new DocumentBuilder()
+            .setStreamingMerge(true)
+            .loadTemplate("record-template.html")
+            .merge(DocumentRendererTests.fakeRecord())
+            .merge("all_course_records", records);
+        try (FileOutputStream fileOutputStream = new FileOutputStream(
+            "target/streaming-sample.pdf")) {
+            builder.save(fileOutputStream);
+        }
+    }
+
+    @Test
+    void mergeFailureShouldBeReportedTest() throws ParseException {
+        DocumentBuilder builder = new DocumentBuilder()
+            .setStreamingMerge(true)
+            .loadTemplateFromPlainText("<html><body><p>$broken.explode()</p></body></html>")
+            .merge(Map.of("broken", new Broken()));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        MethodInvocationException e = assertThrows(MethodInvocationException.class,
+            () -> builder.save(bos));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    public static class Broken {
+
+        public String explode() {
+            throw new IllegalStateException("boom");
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cc.ddrpa.motto.html.cache.CacheStats;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class StylesheetCacheTests {
+
+    private static final String TEMPLATE = """
+        <html><head>
+        <link rel="stylesheet" type="text/css" href="$css"/>
+        <style>p { font-size: 14pt; }</style>
+        </head><body><p class="name">$name</p></body></html>
+        """;
+
+    @Test
+    void stylesheetsShouldBeParsedOnceAcrossRendersTest() throws Exception {
+        Path css = Path.of("target", "stylesheet-cache", "shared.css");
+        Files.createDirectories(css.getParent());
+        Files.writeString(css, "@import url(\"imported.css\");\n.name { color: #c00; }\n",
+            StandardCharsets.UTF_8);
+        Files.writeString(css.resolveSibling("imported.css"), "body { margin: 0; }\n",
+            StandardCharsets.UTF_8);
+        DocumentBuilder.setStylesheetCacheSize(16);
+        DocumentRenderer renderer = new DocumentBuilder()
+            .loadTemplateFromPlainText(TEMPLATE)
+            .buildRenderer();
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            renderer.render(Map.of("css", css.toUri().toString(), "name", "record " + i), bos);
+            assertTrue(bos.size() > 0);
+        }
+        CacheStats stats = DocumentBuilder.stylesheetCacheStats();
+        assertEquals(2, stats.misses());
+        assertEquals(4, stats.hits());
+        assertEquals(2, stats.size());
+        DocumentBuilder.setStylesheetCacheSize(CachingStyleReference.DEFAULT_CACHE_SIZE);
+    }
+}
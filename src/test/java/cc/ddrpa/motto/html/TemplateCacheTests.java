@@ -0,0 +1,45 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import cc.ddrpa.motto.html.cache.CacheStats;
+import cc.ddrpa.motto.html.cache.LruCache;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.junit.jupiter.api.Test;
+
+public class TemplateCacheTests {
+
+    private static final String TEMPLATE = "<html><body><p>$name</p></body></html>";
+
+    @Test
+    void sameContentShouldBeParsedOnceTest() throws ParseException, IOException {
+        DocumentBuilder.setTemplateCacheSize(16);
+        new DocumentBuilder().loadTemplateFromPlainText(TEMPLATE);
+        new DocumentBuilder().loadTemplateFromPlainText(TEMPLATE);
+        new DocumentBuilder().loadTemplateFromStream(
+            new ByteArrayInputStream(TEMPLATE.getBytes(StandardCharsets.UTF_8)));
+        // 不同的缓存键不共享条目
+        new DocumentBuilder().loadTemplateFromPlainText(TEMPLATE, "tenant-a");
+        CacheStats stats = DocumentBuilder.templateCacheStats();
+        assertEquals(2, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(2, stats.size());
+        DocumentBuilder.setTemplateCacheSize(DocumentBuilder.DEFAULT_TEMPLATE_CACHE_SIZE);
+    }
+
+    @Test
+    void leastRecentlyUsedShouldBeEvictedTest() {
+        LruCache<String, String> cache = new LruCache<>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals(1, cache.stats().evictions());
+    }
+}
@@ -0,0 +1,57 @@
+package cc.ddrpa.motto.html;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.junit.jupiter.api.Test;
+
+public class TemplateSourceTests {
+
+    private static String render(Template template) {
+        StringWriter writer = new StringWriter();
+        template.merge(new VelocityContext(Map.of("name", "motto")), writer);
+        return writer.toString();
+    }
+
+    @Test
+    void inMemoryTemplateShouldBeReloadedAfterIntervalTest() throws InterruptedException {
+        Map<String, String> templates = new ConcurrentHashMap<>();
+        templates.put("greeting", "hello $name");
+        TemplateSource source = TemplateSource.inMemory(templates, 1);
+        Template first = source.getTemplate("greeting");
+        assertEquals("hello motto", render(first));
+
+        templates.put("greeting", "bye $name");
+        // 在检查间隔内直接使用缓存
+        assertSame(first, source.getTemplate("greeting"));
+        Thread.sleep(1100);
+        assertEquals("bye motto", render(source.getTemplate("greeting")));
+    }
+
+    @Test
+    void directoryTemplateTest() throws IOException {
+        Path directory = Files.createDirectories(Path.of("target", "template-source"));
+        Files.writeString(directory.resolve("greeting.html"), "hello $name");
+        TemplateSource source = TemplateSource.directory(directory);
+        Template template = source.getTemplate("greeting.html");
+        assertEquals("hello motto", render(template));
+        assertSame(template, source.getTemplate("greeting.html"));
+
+        Files.writeString(directory.resolve("document.html"),
+            "<html><body><p>$name</p></body></html>");
+        new DocumentBuilder()
+            .setTemplateSource(source)
+            .loadTemplate("document.html")
+            .merge("name", "motto")
+            .save(OutputStream.nullOutputStream());
+    }
+}